@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the output of svn log --xml one commit at a time.
+ *
+ * Only the commit being read is held in memory, so callers can filter and
+ * aggregate a log of any size as it streams out of svn:
+ *
+ *     try (final CommitReader commits = new CommitReader(in)) {
+ *         commits.stream().filter(...)
+ *     }
+ *
+ * Commits have the same fields Commit.Log would give them through JAXB,
+ * including the paths of an svn log --verbose.
+ */
+public class CommitReader implements Iterator<Commit>, Closeable {
+
+    private static final XMLInputFactory factory = newFactory();
+
+    private final XMLStreamReader reader;
+    private Commit next;
+    private boolean done;
+
+    public CommitReader(final InputStream in) {
+        try {
+            this.reader = factory.createXMLStreamReader(in);
+        } catch (final XMLStreamException e) {
+            throw new IllegalStateException("Unable to read svn log", e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !done) {
+            next = read();
+            done = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public Commit next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        final Commit commit = next;
+        next = null;
+        return commit;
+    }
+
+    /**
+     * The remaining commits in log order.  Closing the stream closes the
+     * reader.
+     */
+    public Stream<Commit> stream() {
+        final Spliterator<Commit> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (final XMLStreamException e) {
+            // ignore
+        }
+    }
+
+    private Commit read() {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "logentry".equals(reader.getLocalName())) {
+                    return logentry();
+                }
+            }
+            return null;
+        } catch (final XMLStreamException e) {
+            throw new IllegalStateException("Unable to read svn log", e);
+        }
+    }
+
+    private Commit logentry() throws XMLStreamException {
+        final Commit commit = new Commit();
+        commit.setRevision(Long.parseLong(reader.getAttributeValue(null, "revision")));
+
+        while (reader.hasNext()) {
+            final int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT && "logentry".equals(reader.getLocalName())) {
+                return commit;
+            }
+
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+            switch (reader.getLocalName()) {
+                case "author":
+                    commit.setAuthor(reader.getElementText());
+                    break;
+                case "date":
+                    commit.setDate(date(reader.getElementText()));
+                    break;
+                case "msg":
+                    commit.setMessage(reader.getElementText());
+                    break;
+                case "path":
+                    final Commit.Path path = new Commit.Path();
+                    path.setKind(reader.getAttributeValue(null, "kind"));
+                    path.setAction(reader.getAttributeValue(null, "action"));
+                    path.setPath(reader.getElementText());
+                    commit.getPaths().add(path);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        throw new IllegalStateException("svn log ended inside revision " + commit.getRevision());
+    }
+
+    private static Date date(final String text) {
+        try {
+            return Date.from(Instant.parse(text.trim()));
+        } catch (final DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static XMLInputFactory newFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
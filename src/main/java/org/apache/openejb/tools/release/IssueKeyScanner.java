@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Finds JIRA issue keys such as TOMEE-1234 for a fixed set of project
+ * prefixes in a single pass over the text.
+ *
+ * The prefixes are held in a trie that is walked one character at a
+ * time, ignoring case, so no upper-cased copy of the text is made and no
+ * regular expression runs.  A key must start at a word boundary or right
+ * after another key, and its number ends at the first non-digit.  Keys are reported upper-cased, in
+ * the order they appear, including repeats.
+ *
+ * A scanner is immutable and may be shared between threads.
+ */
+public class IssueKeyScanner {
+
+    private final Node root = new Node();
+
+    public IssueKeyScanner(final String... projects) {
+        this(Arrays.asList(projects));
+    }
+
+    public IssueKeyScanner(final Collection<String> projects) {
+        for (final String project : projects) {
+            final String prefix = project.toUpperCase(Locale.ENGLISH);
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                final int letter = prefix.charAt(i) - 'A';
+                if (letter < 0 || letter >= 26) {
+                    throw new IllegalArgumentException("Project keys must be letters: " + project);
+                }
+                if (node.next[letter] == null) node.next[letter] = new Node();
+                node = node.next[letter];
+            }
+            node.project = prefix;
+        }
+    }
+
+    /**
+     * The keys in the text, or an empty list if it is null
+     */
+    public List<String> keys(final CharSequence text) {
+        final List<String> keys = new ArrayList<>();
+        scan(text, keys::add);
+        return keys;
+    }
+
+    public void scan(final CharSequence text, final Consumer<String> keys) {
+        if (text == null) return;
+
+        final Scan scan = new Scan(keys);
+        for (int i = 0; i < text.length(); i++) {
+            scan.accept(text.charAt(i));
+        }
+        scan.end();
+    }
+
+    public void scan(final char[] text, final int offset, final int length, final Consumer<String> keys) {
+        final Scan scan = new Scan(keys);
+        for (int i = offset; i < offset + length; i++) {
+            scan.accept(text[i]);
+        }
+        scan.end();
+    }
+
+    /**
+     * Scans the reader to its end without holding more than a buffer of it
+     */
+    public void scan(final Reader reader, final Consumer<String> keys) throws IOException {
+        final Scan scan = new Scan(keys);
+        final char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                scan.accept(buffer[i]);
+            }
+        }
+        scan.end();
+    }
+
+    private static class Node {
+        private final Node[] next = new Node[26];
+        private String project;
+    }
+
+    /**
+     * The state of one pass.  Between keys it waits for a word boundary,
+     * then follows the trie through the project letters, a dash and the
+     * digits of the issue number.
+     */
+    private class Scan {
+        private final Consumer<String> keys;
+        private final StringBuilder number = new StringBuilder();
+        private boolean boundary = true;
+        private Node node;
+        private String project;
+
+        private Scan(final Consumer<String> keys) {
+            this.keys = keys;
+        }
+
+        private void accept(final char c) {
+            boolean start = boundary;
+            boundary = !Character.isLetterOrDigit(c);
+
+            if (project != null) {
+                if (c >= '0' && c <= '9') {
+                    number.append(c);
+                    return;
+                }
+                start |= emit();
+            } else if (node != null) {
+                if (c == '-' && node.project != null) {
+                    project = node.project;
+                    node = null;
+                    return;
+                }
+                node = next(node, c);
+                if (node != null) return;
+            }
+
+            if (start) {
+                node = next(root, c);
+            }
+        }
+
+        /**
+         * Reports the key just read, if it has a number
+         */
+        private boolean emit() {
+            final boolean found = number.length() > 0;
+            if (found) {
+                keys.accept(project + '-' + number);
+            }
+            number.setLength(0);
+            project = null;
+            return found;
+        }
+
+        private void end() {
+            if (project != null) emit();
+        }
+
+        private Node next(final Node node, final char c) {
+            final int letter = (c | 0x20) - 'a';
+            return letter >= 0 && letter < 26 ? node.next[letter] : null;
+        }
+    }
+}
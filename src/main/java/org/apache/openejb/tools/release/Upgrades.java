@@ -16,10 +16,13 @@
  */
 package org.apache.openejb.tools.release;
 
+import org.apache.openejb.tools.release.jira.IssueCache;
+import org.apache.openejb.tools.release.jira.IssueRecord;
 import org.codehaus.swizzle.jira.Issue;
 import org.codehaus.swizzle.jira.JiraRss;
 import org.codehaus.swizzle.jira.MapObjectList;
 
+import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -43,13 +46,13 @@ public class Upgrades {
     public List<Issue> getIssues() throws Exception {
 
         final List<String> missing = new ArrayList<String>();
-        final List<String> urls = new ArrayList<String>();
+        final List<String> queries = new ArrayList<String>();
 
         for (final Upgrade upgrade : upgrades) {
             final String key = upgrade.getKey();
 
             for (final String version : upgrade.getVersions()) {
-                urls.add("https://issues.apache.org/jira/sr/jira.issueviews:searchrequest-xml/temp/SearchRequest.xml?jqlQuery=project+%3D+" + key + "+AND+fixVersion+%3D+%22" + version + "%22+AND+status+in+%28Resolved%2C+Closed%29&tempMax=1000");
+                queries.add("project = " + key + " AND fixVersion = \"" + version + "\" AND status in (Resolved, Closed)");
             }
         }
 
@@ -60,10 +63,23 @@ public class Upgrades {
             throw new IllegalStateException("Missing projects or versions");
         }
 
+        final IssueCache.Search search = jql -> {
+            final String url = "https://issues.apache.org/jira/sr/jira.issueviews:searchrequest-xml/temp/SearchRequest.xml?jqlQuery="
+                    + URLEncoder.encode(jql, "UTF-8") + "&tempMax=1000";
+
+            final List<IssueRecord> records = new ArrayList<IssueRecord>();
+            for (final Issue issue : new JiraRss(url).getIssues()) {
+                records.add(IssueRecord.of(issue));
+            }
+            return records;
+        };
+
         final List<Issue> issues = new MapObjectList<Issue>();
 
-        for (final String url : urls) {
-            issues.addAll(new JiraRss(url).getIssues());
+        for (final String jql : queries) {
+            for (final IssueRecord record : IssueCache.global().query(jql, search)) {
+                issues.add(record.toIssue());
+            }
         }
 
         return issues;
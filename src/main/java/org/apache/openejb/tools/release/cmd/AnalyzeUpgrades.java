@@ -20,12 +20,14 @@ import lombok.Data;
 import org.apache.openejb.tools.release.maven.pom.Dependency;
 import org.apache.openejb.tools.release.maven.pom.PomParser;
 import org.apache.openejb.tools.release.maven.pom.Project;
-import org.apache.openejb.tools.release.util.Exec;
 import org.tomitribe.crest.api.Command;
 import org.tomitribe.crest.api.table.Table;
 import org.tomitribe.util.Files;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,6 +38,8 @@ import java.util.stream.Stream;
 @Command("upgrades")
 public class AnalyzeUpgrades {
 
+    private static final String CENTRAL = "https://repo1.maven.org/maven2/";
+
     /**
      * Compares the version upgrades from one version to another using
      * the bom files for tomee-webprofile, tomee-microprofile, tomee-plus,
@@ -47,8 +51,14 @@ public class AnalyzeUpgrades {
     @Command("compare")
     public Stream<Upgrade> compare(final String from, final String to) {
 
-        final Map<String, Dependency> previous = getDependencies(from);
-        final Map<String, Dependency> current = getDependencies(to);
+        final Map<String, Dependency> previous;
+        final Map<String, Dependency> current;
+        try (final Dist.MavenRepo repo = new Dist.MavenRepo(URI.create(CENTRAL), System.out)) {
+            previous = getDependencies(repo, from);
+            current = getDependencies(repo, to);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         return current.keySet().stream()
                 .sorted()
@@ -57,34 +67,39 @@ public class AnalyzeUpgrades {
                 .map(s -> new Upgrade(previous.get(s), current.get(s)));
     }
 
-    private Map<String, Dependency> getDependencies(final String version) {
+    private Map<String, Dependency> getDependencies(final Dist.MavenRepo repo, final String version) {
         final Map<String, Dependency> map = new HashMap<>();
         Stream.of("tomee-webprofile", "tomee-microprofile", "tomee-plus", "tomee-plume")
-                .map(s -> getDependencies(s, version))
+                .map(s -> getDependencies(repo, s, version))
                 .flatMap(Collection::stream)
                 .forEach(dependency -> map.put(dependency.getGroupId() + ":" + dependency.getArtifactId(), dependency));
         return map;
     }
 
-    private List<Dependency> getDependencies(final String artifactId, final String version) {
-        final File pom = resolve("org.apache.tomee.bom", artifactId, version, "pom");
+    private List<Dependency> getDependencies(final Dist.MavenRepo repo, final String artifactId, final String version) {
+        final File pom = resolve(repo, "org.apache.tomee.bom", artifactId, version, "pom");
 
         final Project project = PomParser.parse(pom);
         return project.getDependencies();
     }
 
-    private File resolve(final String groupId, final String artifactId, final String version, final String packaging) {
-        try {
-            return mvn(groupId, artifactId, version, packaging);
-        } catch (IllegalStateException e) {
-            Exec.exec("mvn", "org.apache.maven.plugins:maven-dependency-plugin:3.3.0:get",
-                    "-DgroupId=" + groupId,
-                    "-DartifactId=" + artifactId,
-                    "-Dversion=" + version,
-                    "-Dpackaging=" + packaging
-            );
+    /**
+     * Released boms are resolved through the shared artifact cache.  Snapshots
+     * only exist in the local repository where they were built.
+     */
+    private File resolve(final Dist.MavenRepo repo, final String groupId, final String artifactId, final String version, final String packaging) {
+        if (version.endsWith("-SNAPSHOT")) {
             return mvn(groupId, artifactId, version, packaging);
         }
+
+        final String path = String.format("%s/%s/%s/%s-%s.%s",
+                groupId.replace('.', '/'), artifactId, version, artifactId, version, packaging);
+
+        try {
+            return repo.resolve(path);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public static File mvn(final String group, final String artifact, final String version, final String packaging) {
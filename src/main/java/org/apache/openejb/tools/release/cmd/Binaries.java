@@ -20,21 +20,27 @@ import org.apache.creadur.tentacles.NexusClient;
 import org.apache.creadur.tentacles.Platform;
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.svn.Svn;
+import org.apache.openejb.tools.release.util.ArtifactCache;
 import org.apache.openejb.tools.release.util.Files;
 import org.apache.openejb.tools.release.util.IO;
 import org.apache.xbean.finder.UriSet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import static java.lang.String.format;
-import static org.apache.openejb.tools.release.util.Exec.exec;
 
 /**
  * Little utility that downloads the binaries into
@@ -45,49 +51,83 @@ public class Binaries {
     public static void main(final String[] args) throws Exception {
 
         final File dir = Files.file(Release.builddir, "staging-" + Release.build, Release.tomeeVersionName);
-
-        { // Make and checkout the binaries dir in svn
-            if (dir.exists()) {
-                Files.remove(dir);
+        try (final Svn svn = Svn.open(System.out)) {
+            { // Make and checkout the binaries dir in svn
+                if (dir.exists()) {
+                    Files.remove(dir);
+                }
+
+                Files.mkdirs(dir);
+
+                final String svnBinaryLocation = format("https://dist.apache.org/repos/dist/dev/tomee/staging-%s/%s", Release.build, Release.tomeeVersionName);
+                if (!svn.exists(svnBinaryLocation)) {
+                    svn.mkdir(format("[release-tools] staged binary dir for %s", Release.tomeeVersionName), Collections.singletonList(svnBinaryLocation));
+                }
+                svn.checkout(svnBinaryLocation, dir, Svn.Depth.INFINITY);
             }
 
-            Files.mkdirs(dir);
+            final URI repo = URI.create(Release.staging);
 
-            final String svnBinaryLocation = format("https://dist.apache.org/repos/dist/dev/tomee/staging-%s/%s", Release.build, Release.tomeeVersionName);
-            exec("svn", "-m", format("[release-tools] staged binary dir for %s", Release.tomeeVersionName), "mkdir", "--parents", svnBinaryLocation);
-            exec("svn", "co", svnBinaryLocation, dir.getAbsolutePath());
-        }
+            System.out.println("Downloads: " + dir.getAbsolutePath());
+            System.out.println("Repo: " + repo.toASCIIString());
 
-        final URI repo = URI.create(Release.staging);
+            final NexusClient client = new NexusClient(Platform.aPlatform());
+            final Set<URI> crawled = client.crawl(repo);
+            final UriSet all = new UriSet(crawled);
+            final ArtifactCache cache = ArtifactCache.global();
+            final List<File> downloaded = new ArrayList<>();
 
-        System.out.println("Downloads: " + dir.getAbsolutePath());
-        System.out.println("Repo: " + repo.toASCIIString());
+            UriSet binaries = all.include(".*\\.(zip|gz|war).*");
+            binaries = binaries.exclude(".*\\.asc\\.(sha1|md5)");
+            binaries = binaries.exclude(".*itests.*");
+            binaries = binaries.exclude(".*karafee.*");
 
-        final NexusClient client = new NexusClient(Platform.aPlatform());
-        final UriSet all = new UriSet(client.crawl(repo));
+            for (final URI uri : binaries) {
+                final File file = new File(dir, uri.getPath().replaceAll(".*/", "")).getAbsoluteFile();
 
-        UriSet binaries = all.include(".*\\.(zip|gz|war).*");
-        binaries = binaries.exclude(".*\\.asc\\.(sha1|md5)");
-        binaries = binaries.exclude(".*itests.*");
-        binaries = binaries.exclude(".*karafee.*");
+                final File object = cache.resolve(ArtifactCache.key(uri), sha1(client, crawled, uri), download -> {
+                    System.out.println("Downloading " + file.getName());
+                    client.download(uri, download);
+                });
+                cache.copy(object, file);
+                downloaded.add(file);
 
-        for (final URI uri : binaries) {
-            final File file = new File(dir, uri.getPath().replaceAll(".*/", "")).getAbsoluteFile();
+                if (file.getName().endsWith(".zip")) {
+                    final PrintStream out = new PrintStream(IO.write(new File(file.getAbsolutePath() + ".txt")));
 
-            System.out.println("Downloading " + file.getName());
-            client.download(uri, file);
+                    list(file, out);
+                    out.close();
+                }
+            }
 
-            exec("svn", "add", file.getAbsolutePath());
+            for (final Svn.Result result : svn.add(downloaded)) {
+                if (result.getStatus() == Svn.Status.FAILED) {
+                    throw new IllegalStateException("svn add failed " + result);
+                }
+            }
 
-            if (file.getName().endsWith(".zip")) {
-                final PrintStream out = new PrintStream(IO.write(new File(file.getAbsolutePath() + ".txt")));
+            svn.commit(format("[release-tools] staged binaries for %s", Release.tomeeVersionName), dir);
+            System.out.println(svn);
+        }
+    }
 
-                list(file, out);
-                out.close();
+    /**
+     * Fetches the published sha1 of a binary so a copy already in the
+     * artifact cache, say from a previous staging repo, can be reused
+     */
+    private static String sha1(final NexusClient client, final Set<URI> crawled, final URI uri) throws IOException {
+        final URI sha1 = URI.create(uri + ".sha1");
+        if (!crawled.contains(sha1)) return null;
+
+        final File file = File.createTempFile("binaries", ".sha1");
+        try {
+            client.download(sha1, file);
+            try (final InputStream in = IO.read(file)) {
+                return ArtifactCache.sha1(in);
             }
+        } finally {
+            file.delete();
         }
-
-        exec("svn", "-m", format("[release-tools] staged binaries for %s", Release.tomeeVersionName), "ci", dir.getAbsolutePath());
     }
 
     private static void list(final File file, final PrintStream out) throws IOException {
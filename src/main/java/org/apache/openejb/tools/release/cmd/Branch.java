@@ -18,9 +18,9 @@ package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.svn.Svn;
 
 import static java.lang.String.format;
-import static org.apache.openejb.tools.release.util.Exec.exec;
 
 /**
  * @version $Rev$ $Date$
@@ -33,11 +33,13 @@ public class Branch {
         final String branch = Release.branches + Release.tomeeVersionName;
         final String trunk = Release.trunk;
 
-        if (exec("svn", "info", branch) == 0) {
-            exec("svn", "-m", format("[release-tools] recreating branch for %s", Release.tomeeVersionName), "rm", branch);
-        }
+        try (final Svn svn = Svn.open(System.out)) {
+            if (svn.exists(branch)) {
+                svn.delete(format("[release-tools] recreating branch for %s", Release.tomeeVersionName), branch);
+            }
 
-        exec("svn", "-m", format("[release-tools] creating branch for %s", Release.tomeeVersionName), "cp", trunk, branch);
+            svn.copy(format("[release-tools] creating branch for %s", Release.tomeeVersionName), trunk, branch);
+        }
     }
 
 }
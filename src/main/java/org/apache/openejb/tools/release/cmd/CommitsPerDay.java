@@ -17,16 +17,11 @@
 package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
-import org.apache.openejb.tools.release.Commit;
-import org.apache.openejb.tools.release.util.Exec;
-import org.apache.openejb.tools.release.util.ObjectList;
+import org.apache.openejb.tools.release.svn.CommitStore;
+import org.apache.openejb.tools.release.svn.Svn;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.ListIterator;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -41,41 +36,24 @@ public class CommitsPerDay {
 
         final String start = "2007-01-01";
 
-        final InputStream in = Exec.read("svn", "log", "--xml", "-rHEAD:{" + start + "}", tag);
-
-        final JAXBContext context = JAXBContext.newInstance(Commit.Log.class);
-        final Unmarshaller unmarshaller = context.createUnmarshaller();
-
-        final Commit.Log log = (Commit.Log) unmarshaller.unmarshal(in);
-
-        ObjectList<Commit> commits = log.getCommits();
-        commits = commits.ascending("revision");
-
         final Date end = new Date();
+        final Date first = new SimpleDateFormat("yyyy-MM-dd").parse(start);
+        final long period = TimeUnit.DAYS.toMillis(30);
+        final int periods = (int) ((end.getTime() - first.getTime() + period - 1) / period);
+
+        // only the date of each commit is needed, so count straight off the index
+        final long[] counts = new long[periods];
+        try (final Svn svn = Svn.open(System.out)) {
+            CommitStore.global().datesSince(svn, tag, first).forEach(time -> {
+                final long bucket = (time - first.getTime()) / period;
+                if (bucket < periods) counts[(int) bucket]++;
+            });
+        }
 
-        Date date = new SimpleDateFormat("yyyy-MM-dd").parse(start);
-
-        final ListIterator<Commit> iterator = commits.listIterator();
-
-        while (lesser(date, end)) {
-
-            int c = 0;
-
-            final Date next = increment(date);
-
-            while (iterator.hasNext()) {
-                final Commit commit = iterator.next();
-                if (lesser(commit.getDate(), next)) {
-                    c++;
-                } else {
-                    iterator.previous();
-                    break;
-                }
-            }
-
-            System.out.print(c + ", ");
-
-            date = next;
+        Date date = first;
+        for (int i = 0; lesser(date, end); i++) {
+            System.out.print(counts[i] + ", ");
+            date = increment(date);
         }
 
     }
@@ -18,11 +18,11 @@ package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
-import org.apache.openejb.tools.release.util.Exec;
 import org.apache.openejb.tools.release.util.Files;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
@@ -49,7 +49,7 @@ public class CompareLibraries {
     }
 
     private static void diff(final File repository, final String artifactId, final String versionA, final String versionB, final String classifier) throws IOException {
-        final String repo1Url = "http://repo1.maven.apache.org/maven2";
+        final String repo1Url = "https://repo1.maven.org/maven2";
         final String stagingUrl = Release.mvnStaging;
         System.out.printf("\n%s %s %s\n\n", artifactId, versionB, (classifier == null) ? "" : classifier);
 
@@ -97,7 +97,7 @@ public class CompareLibraries {
         return map;
     }
 
-    private static File artifact(final File repository, final String artifactId, final String version, final String classifier, final String repoUrl) {
+    private static File artifact(final File repository, final String artifactId, final String version, final String classifier, final String repoUrl) throws IOException {
 
         final String zip = classifier != null ? artifactId + "-" + version + "-" + classifier + ".zip" : artifactId + "-" + version + ".zip";
 
@@ -105,40 +105,12 @@ public class CompareLibraries {
 
         if (file.exists()) return file;
 
-        // download the artifact
-        final String artifact;
+        // not in the local repository, resolve it through the shared artifact cache
+        final URI repoUri = URI.create(repoUrl.endsWith("/") ? repoUrl : repoUrl + "/");
 
-        if (classifier != null) {
-            artifact = "-Dartifact=" + String.format("org.apache.tomee:%s:%s:%s:%s", artifactId, version, "zip", classifier);
-        } else {
-            artifact = "-Dartifact=" + String.format("org.apache.tomee:%s:%s:%s", artifactId, version, "zip");
+        try (final Dist.MavenRepo repo = new Dist.MavenRepo(repoUri, System.out)) {
+            return repo.resolve(String.format("org/apache/tomee/%s/%s/%s", artifactId, version, zip));
         }
-
-        final int i = Exec.exec(mvn(), "-X", "org.apache.maven.plugins:maven-dependency-plugin:2.4:get", "-DrepoUrl=" + repoUrl, artifact);
-
-        if (i != 0) {
-            throw new IllegalStateException("Download failed: " + i);
-        }
-
-        return artifact(repository, artifactId, version, classifier, repoUrl);
-    }
-
-    private static String mvn() {
-        final String[] paths = {
-                System.getenv("M2_HOME") + "/bin/mvn",
-                System.getenv("MAVEN_HOME") + "/bin/mvn",
-                "/usr/bin/mvn",
-                "/usr/local/bin/mvn"
-        };
-
-        for (final String path : paths) {
-            final File file = new File(path);
-            if (file.exists()) {
-                return file.getAbsolutePath();
-            }
-        }
-
-        return "mvn";
     }
 
     private static List<FileData> list(final File previousFile) throws IOException {
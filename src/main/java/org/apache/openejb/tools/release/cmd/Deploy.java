@@ -18,6 +18,7 @@ package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.svn.Svn;
 import org.apache.openejb.tools.release.util.Exec;
 import org.apache.openejb.tools.release.util.Files;
 
@@ -41,7 +42,9 @@ public class Deploy {
         Files.mkdir(dir);
         Exec.cd(dir);
 
-        Exec.exec("svn", "co", tag);
+        try (final Svn svn = Svn.open(System.out)) {
+            svn.checkout(tag, new File(dir, Release.tomeeVersionName), Svn.Depth.INFINITY);
+        }
 
         Exec.cd(new File(dir, Release.tomeeVersionName));
 
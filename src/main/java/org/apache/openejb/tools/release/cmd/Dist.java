@@ -16,46 +16,90 @@
  */
 package org.apache.openejb.tools.release.cmd;
 
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
+import org.apache.openejb.tools.release.svn.Svn;
+import org.apache.openejb.tools.release.svn.SvnException;
+import org.apache.openejb.tools.release.util.ArtifactCache;
+import org.apache.openejb.tools.release.util.DigestCache;
+import org.apache.openejb.tools.release.util.Digests;
+import org.apache.openejb.tools.release.util.ListingCache;
+import org.apache.openejb.tools.release.util.Pipe;
+import org.apache.openejb.tools.release.util.Pipeline;
+import org.apache.openejb.tools.release.util.Threads;
 import org.tomitribe.crest.api.Command;
 import org.tomitribe.crest.api.Default;
 import org.tomitribe.crest.api.Option;
 import org.tomitribe.crest.api.Out;
 import org.tomitribe.swizzle.stream.StreamBuilder;
 import org.tomitribe.util.Files;
-import org.tomitribe.util.Hex;
 import org.tomitribe.util.IO;
 import org.tomitribe.util.dir.Dir;
 import org.tomitribe.util.dir.Filter;
 import org.tomitribe.util.dir.Walk;
-
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.io.UncheckedIOException;
 import java.net.URI;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
-import static org.apache.openejb.tools.release.util.Exec.exec;
-import static org.apache.openejb.tools.release.util.Exec.read;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 @Command
 public class Dist {
@@ -64,91 +108,251 @@ public class Dist {
      * Download binaries from a maven repo and commit them to dist.apache.org dev
      *
      * The org/apache/tomee/apache-tomee and org/apache/tomee/tomee-project sections
-     * of the maven repository will be scanned for the version specified and all zip
+     * of the maven repository will be scanned for each version specified and all zip
      * and tar.gz files will be downloaded along with any associated asc and sha1 files.
-     * After download the sha1 files of each binary will be checked to ensure a complete
-     * download.  The sha256 and sha512 file for each binary will be computed and written
-     * to disk.
+     * Each binary is hashed as it streams to disk and its sha1 is checked before the file
+     * is moved into the work directory, so a corrupt download fails the run right away.
+     * The sha256 and sha512 file for each binary are written as soon as it is verified.
+     * Binaries already present from a previous run are verified and hashed afterwards.
+     * Downloads interrupted by a failure or a killed process are kept as .part files and
+     * resumed with HTTP Range requests the next time the command is run.
+     *
+     * Listing, downloading and verifying each binary run as a pipeline of stages
+     * connected by bounded queues, so hashing one binary overlaps the download of the
+     * next.  The throughput of every stage is printed at the end.  All files are then
+     * added to svn with a single svn add, and the number of svn processes run and the
+     * time spent in them is printed as well.
+     *
+     * Several versions, for example 8.0.7 9.0.0-M7, may be published together.  They
+     * share one pipeline and connection pool, their directories are created in svn with
+     * a single mkdir and all binaries are committed in a single commit.
      *
      * If the --dry-run flag is not enabled, the resulting zip, tar.gz, asc, sha256 and
      * sha512 files will be uploaded to a directory in dist.apache.org dev or the specified
      * svn repo.
      *
+     * With --svnmucc no working copy is checked out.  The directories are created and every
+     * file is put straight from the work directory in one svnmucc transaction, which makes
+     * a single commit.  This requires the svnmucc client that ships with Subversion.
+     *
      * When ready, the dist.apache.org dev directory can be moved to dist.apache.org release
      * via the `dist dev-to-release` command.
      *
-     * @param version The TomEE version being published.  Example: 8.0.7
+     * @param versions The TomEE versions being published.  Example: 8.0.7
      * @param tmp The directory under which files can be temporarily downloaded
      * @param mavenRepoUri  The root path of a Nexus staging repository or Maven Central
      * @param svnRepo The svn directory for tomee where a subdirectory can be created and binaries uploaded
      * @param dryRun Download the files to local disk, but do not commit them to svn
+     * @param svnmucc Upload with a single svnmucc transaction instead of a checkout and commit
+     * @param parallelism The number of files to download concurrently
+     * @param connectionsPerHost The maximum number of pooled connections opened to any one host
+     * @param segments The number of byte ranges fetched in parallel for large binaries.  Use 1 to disable.
+     *                 Lowered so that parallelism times segments fits within connections-per-host
+     * @param segmentThreshold Binaries of at least this many bytes are downloaded in segments
      */
     @Command("maven-to-dev")
-    public void mavenToDev(final String version,
+    public void mavenToDev(final String[] versions,
                            @Option("tmp") @Default("/tmp/") final File tmp,
                            @Option("maven-repo") @Default("https://repo1.maven.org/maven2/") final URI mavenRepoUri,
                            @Option("svn-repo") @Default("https://dist.apache.org/repos/dist/dev/tomee/") final URI svnRepo,
                            @Option("dry-run") @Default("false") final boolean dryRun,
+                           @Option("svnmucc") @Default("false") final boolean svnmucc,
+                           @Option("parallelism") @Default("4") final int parallelism,
+                           @Option("connections-per-host") @Default("4") final int connectionsPerHost,
+                           @Option("segments") @Default("4") final int segments,
+                           @Option("segment-threshold") @Default("67108864") final long segmentThreshold,
                            final @Out PrintStream out) throws IOException {
 
+        if (versions.length == 0) {
+            throw new CommandFailedException("At least one version must be specified");
+        }
 
         final String build = buildId(mavenRepoUri);
-        final String tomeeVersionName = "tomee-" + version;
-        final String svnBinaryLocation = format("https://dist.apache.org/repos/dist/dev/tomee/staging-%s/%s", build, tomeeVersionName);
+        final URI stagingLocation = child(svnRepo, format("staging-%s/", build));
+        final File work = new File(tmp, format("staging-%s-work", build));
 
-        final File dir = new File(tmp, "tomee-" + version + "-work");
+        final Map<String, File> dirs = new LinkedHashMap<>();
+        for (final String version : versions) {
+            dirs.put(version, new File(work, "tomee-" + version));
+        }
+        final String names = dirs.values().stream().map(File::getName).collect(Collectors.joining(", "));
+
+        try (final Svn svn = Svn.open(out)) {
+            { // Make and checkout the binaries dirs in svn
+                if (!dryRun && !svnmucc) {
+                    final List<String> existing = svn.exists(stagingLocation.toASCIIString())
+                            ? svn.list(stagingLocation.toASCIIString())
+                            : Collections.emptyList();
+                    final List<String> missing = dirs.values().stream()
+                            .map(File::getName)
+                            .filter(name -> !existing.contains(name + "/"))
+                            .map(name -> child(stagingLocation, name).toASCIIString())
+                            .collect(Collectors.toList());
+
+                    svn.mkdir(format("[release-tools] staged binary dirs for %s", names), missing);
+                    svn.checkout(stagingLocation.toASCIIString(), work, Svn.Depth.EMPTY);
+                    svn.update(dirs.values(), Svn.Depth.INFINITY);
+                }
 
-        { // Make and checkout the binaries dir in svn
-            if (!dir.exists()) {
-                Files.mkdirs(dir);
+                for (final File dir : dirs.values()) {
+                    if (!dir.exists()) {
+                        Files.mkdirs(dir);
+                    }
+                }
             }
 
-            if (!dryRun) {
-                exec("svn", "-m", format("[release-tools] staged binary dir for %s", tomeeVersionName), "mkdir", "--parents", svnBinaryLocation);
-                exec("svn", "co", svnBinaryLocation, dir.getAbsolutePath());
+            final List<String> artifactPaths = Arrays.asList("org/apache/tomee/apache-tomee/", "org/apache/tomee/tomee-project/");
+            final List<Listing> listings = new ArrayList<>();
+            dirs.forEach((version, dir) -> artifactPaths.forEach(path -> listings.add(new Listing(version, path, dir))));
+
+            final int hashers = Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+            final List<Binary> invalid = new CopyOnWriteArrayList<>();
+
+            final Pipeline.Result<Binary> result;
+            try (final MavenRepo repo = new MavenRepo(mavenRepoUri, out, parallelism, connectionsPerHost, segments, segmentThreshold)) {
+
+                final Pipeline<Listing, Binary> pipeline = Pipeline.<Listing>start()
+                        .<Listing>then("discover", listings.size(), (listing, emit) -> repo.artifacts(listing.path, listing.version).stream()
+                                .map(listing::with)
+                                .forEach(emit))
+                        .<Download>then("download", parallelism, (listing, emit) -> emit.accept(repo.download(listing.artifact, listing.dir)))
+                        .<Binary>then("verify", hashers, (download, emit) -> {
+                            final Binary binary = Dir.of(Binary.class, download.getFile());
+
+                            if (!download.isVerified()) {
+                                final Map<String, String> digests = binary.digests();
+
+                                if (!binary.verifySha1(digests)) {
+                                    invalid.add(binary);
+                                    return;
+                                }
+
+                                binary.createSha256(digests);
+                                binary.createSha512(digests);
+                                out.println("Hashed " + binary.getFileName());
+                            }
+
+                            emit.accept(binary);
+                        });
+
+                result = pipeline.run(listings);
+            } catch (final IOException | RuntimeException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
             }
-        }
 
+            for (final File dir : dirs.values()) {
+                final long count = result.getOutputs().stream().filter(binary -> binary.get().getParentFile().equals(dir)).count();
+                out.printf("Downloaded %s binaries to %s%n", count, dir.getAbsolutePath());
+            }
+            result.getStages().forEach(stage -> out.println("  " + stage));
 
-        final MavenRepo repo = new MavenRepo(mavenRepoUri, out);
+            if (invalid.size() != 0) {
+                invalid.forEach(binary -> out.printf("SHA1 check failed %s%n", binary.get().getAbsolutePath()));
+                throw new CommandFailedException("Remove the invalid files and try again");
+            }
+
+            final List<File> files = new ArrayList<>();
+            for (final Binary binary : result.getOutputs()) {
+                files.addAll(Arrays.asList(binary.get(), binary.asc(), binary.sha256(), binary.sha512()));
+            }
 
-        final List<URI> binaries = new ArrayList<>();
-        binaries.addAll(repo.binaries("org/apache/tomee/apache-tomee/", version));
-        binaries.addAll(repo.binaries("org/apache/tomee/tomee-project/", version));
+            if (!dryRun && svnmucc) {
+                final String message = format("[release-tools] staged binaries for %s", names);
+                try {
+                    svn.transaction(message, svnRepo.toASCIIString(), muccActions(svn, svnRepo, stagingLocation, dirs.values(), files));
+                } catch (final SvnException e) {
+                    throw new CommandFailedException("svnmucc failed to commit the staged binaries: " + e.getMessage());
+                }
 
-        binaries.forEach(repo.downloadTo(dir));
-        out.printf("Downloaded %s binaries to %s%n", binaries.size(), dir.getAbsolutePath());
+                dirs.values().forEach(dir -> out.printf("Binaries published to %s%n", child(stagingLocation, dir.getName())));
+                out.println(svn);
+            } else if (!dryRun) {
+                final List<Svn.Result> added = svn.add(files);
+                final List<Svn.Result> failed = added.stream()
+                        .filter(add -> add.getStatus() == Svn.Status.FAILED)
+                        .collect(Collectors.toList());
+                out.printf("Added %s files%n", added.size() - failed.size());
+
+                if (failed.size() != 0) {
+                    failed.forEach(add -> out.printf("svn add failed %s%n", add));
+                    throw new CommandFailedException("Unable to add all files to svn");
+                }
 
-        final Work work = Dir.of(Work.class, dir);
+                svn.commit(format("[release-tools] staged binaries for %s", names), work);
 
-        final List<Binary> invalid = work.binaries()
-                .filter(((Predicate<Binary>) Binary::verifySha1).negate())
-                .collect(Collectors.toList());
+                dirs.values().forEach(dir -> out.printf("Binaries published to %s%n", child(stagingLocation, dir.getName())));
+                out.println(svn);
+            }
+        }
+    }
 
-        if (invalid.size() != 0) {
-            invalid.forEach(binary -> out.printf("SHA1 check failed %s%n", binary.get().getAbsolutePath()));
-            throw new CommandFailedException("Remove the invalid files and try again");
+    /**
+     * Appends a path to a url without normalizing it, as URI.resolve would
+     * turn file:///repo into file:/repo which svn does not accept
+     */
+    private static URI child(final URI parent, final String path) {
+        final String base = parent.toASCIIString();
+        return URI.create(base.endsWith("/") ? base + path : base + "/" + path);
+    }
+
+    /**
+     * The svnmucc actions that create whichever of the staging directory and
+     * version directories are missing and put every file into its directory
+     */
+    private static List<String> muccActions(final Svn svn, final URI svnRepo, final URI stagingLocation,
+                                            final Collection<File> dirs, final List<File> files) {
+        final String staging = stagingLocation.toASCIIString().substring(child(svnRepo, "").toASCIIString().length());
+        final List<String> actions = new ArrayList<>();
+
+        final List<String> existing;
+        if (svn.exists(stagingLocation.toASCIIString())) {
+            existing = svn.list(stagingLocation.toASCIIString());
+        } else {
+            existing = Collections.emptyList();
+            actions.add("mkdir");
+            actions.add(staging.replaceAll("/$", ""));
         }
 
-        work.binaries()
-                .peek(Binary::createSha256)
-                .peek(Binary::createSha512)
-                .forEach(binary -> out.println("Hashed " + binary.get().getName()));
+        for (final File dir : dirs) {
+            if (existing.contains(dir.getName() + "/")) continue;
+            actions.add("mkdir");
+            actions.add(staging + dir.getName());
+        }
 
-        if (!dryRun) {
+        for (final File file : files) {
+            actions.add("put");
+            actions.add(file.getAbsolutePath());
+            actions.add(staging + file.getParentFile().getName() + "/" + file.getName());
+        }
 
-            Consumer<File> svnAdd = file -> exec("svn", "add", file.getAbsolutePath());
+        return actions;
+    }
 
-            work.binaries()
-                    .peek(binary -> svnAdd.accept(binary.get()))
-                    .peek(binary -> svnAdd.accept(binary.asc()))
-                    .peek(binary -> svnAdd.accept(binary.sha256()))
-                    .peek(binary -> svnAdd.accept(binary.sha512()))
-                    .forEach(binary -> out.println("Added " + binary.get().getName()));
+    /**
+     * One artifact path of one version to list, and once listed one of
+     * the artifacts found there
+     */
+    private static class Listing {
+        private final String version;
+        private final String path;
+        private final File dir;
+        private final Artifact artifact;
+
+        Listing(final String version, final String path, final File dir) {
+            this(version, path, dir, null);
+        }
 
-            exec("svn", "-m", format("[release-tools] staged binaries for %s", tomeeVersionName), "ci", dir.getAbsolutePath());
+        private Listing(final String version, final String path, final File dir, final Artifact artifact) {
+            this.version = version;
+            this.path = path;
+            this.dir = dir;
+            this.artifact = artifact;
+        }
 
-            out.printf("Binaries published to %s%n", svnBinaryLocation);
+        Listing with(final Artifact artifact) {
+            return new Listing(version, path, dir, artifact);
         }
     }
 
@@ -167,34 +371,108 @@ public class Dist {
      * time for things to propagate, so any updates to the download page should not be done till about 24 hours after this
      * command is run.
      *
+     * All moves and the removal of the emptied staging directory are planned up front and committed as a single
+     * svnmucc transaction, so the promotion is atomic and triggers one mirror sync no matter how many TomEE lines are
+     * in the staging directory.  Use --dry-run to print the plan without committing anything.
+     *
      * Once this command is run it is a good idea to use `dist remove-release` to remove any older releases from the mirror
      * system that we no longer need.
      *
      * @param stagingDir  The name of the staging directory to release.  Example: staging-1179
      * @param dev  The specific location in dist.apache.org dev where this project's binaries are staged
      * @param release  The specific location in dist.apache.org release where this project's binaries are promoted
+     * @param dryRun  Print the planned svn operations, but do not commit them
      */
     @Command("dev-to-release")
     public void release(final String stagingDir,
                         @Option("dev-repo") @Default("https://dist.apache.org/repos/dist/dev/tomee/") final URI dev,
                         @Option("release-repo") @Default("https://dist.apache.org/repos/dist/release/tomee/") final URI release,
+                        @Option("dry-run") @Default("false") final boolean dryRun,
                         final @Out PrintStream out) throws IOException {
 
-        final URI stagingUri = dev.resolve(stagingDir + "/");
-        final String contents = IO.slurp(read("svn", "list", stagingUri.toASCIIString()));
-        final String[] dirs = contents.split("[\n /]+");
+        try (final Svn svn = Svn.open(out)) {
+            final URI stagingUri = child(dev, stagingDir + "/");
+
+            final List<String> dirs = entries(svn.list(stagingUri.toASCIIString()));
+            if (dirs.isEmpty()) {
+                throw new CommandFailedException("Nothing is staged in " + stagingUri);
+            }
+
+            final List<String> released = entries(svn.list(release.toASCIIString()));
+            final List<String> conflicts = dirs.stream()
+                    .filter(released::contains)
+                    .collect(Collectors.toList());
+            if (!conflicts.isEmpty()) {
+                throw new CommandFailedException("Already released " + conflicts + " in " + release);
+            }
+
+            final URI root = commonRoot(stagingUri, release);
+            final List<String> actions = new ArrayList<>();
+            for (final String dir : dirs) {
+                actions.add("mv");
+                actions.add(relative(root, child(stagingUri, dir)));
+                actions.add(relative(root, child(release, dir)));
+            }
+            actions.add("rm");
+            actions.add(relative(root, stagingUri));
+
+            out.printf("Promotion of %s in one commit to %s%n", stagingDir, root);
+            for (final String dir : dirs) {
+                out.printf("  mv %s -> %s%n", relative(root, child(stagingUri, dir)), relative(root, child(release, dir)));
+            }
+            out.printf("  rm %s%n", relative(root, stagingUri));
+
+            if (dryRun) return;
+
+            final String message = format("[release-tools] promote staged binaries for %s", String.join(", ", dirs));
+            try {
+                svn.transaction(message, root.toASCIIString(), actions);
+            } catch (final SvnException e) {
+                throw new CommandFailedException("svnmucc failed to promote " + stagingDir + ": " + e.getMessage());
+            }
 
-        for (final String dir : dirs) {
-            final URI dirUri = stagingUri.resolve(dir);
-            out.printf("Promoting %s/%s%n", stagingDir, dir);
-            exec("svn", "-m", format("[release-tools] promote staged binaries for %s", dir), "mv", dirUri.toASCIIString(), release.toASCIIString());
+            out.printf("Listing %s%n", release);
+            svn.list(release.toASCIIString()).forEach(out::println);
+            out.println(svn);
         }
+    }
 
-        out.printf("Removing %s%n", stagingUri);
-        exec("svn", "-m", format("[release-tools] remove staged directory %s", stagingDir), "rm", stagingUri.toASCIIString());
+    /**
+     * The names of svn list entries, without the trailing slash of directories
+     */
+    private static List<String> entries(final List<String> list) {
+        return list.stream()
+                .map(entry -> entry.replaceAll("/$", ""))
+                .collect(Collectors.toList());
+    }
 
-        out.printf("Listing %s%n", release);
-        exec("svn", "list", release.toASCIIString());
+    /**
+     * The deepest url that contains both urls, used as the svnmucc root so
+     * one transaction can span the dev and release trees
+     */
+    private static URI commonRoot(final URI a, final URI b) {
+        if (!Objects.equals(a.getScheme(), b.getScheme()) || !Objects.equals(a.getRawAuthority(), b.getRawAuthority())) {
+            throw new CommandFailedException(format("%s and %s are not in the same repository", a, b));
+        }
+
+        final String[] as = a.getRawPath().split("/");
+        final String[] bs = b.getRawPath().split("/");
+
+        final StringBuilder path = new StringBuilder();
+        for (int i = 0; i < Math.min(as.length, bs.length) && as[i].equals(bs[i]); i++) {
+            if (!as[i].isEmpty()) path.append(as[i]);
+            path.append('/');
+        }
+
+        final String url = a.toASCIIString();
+        return URI.create(url.substring(0, url.indexOf(a.getRawPath())) + path);
+    }
+
+    /**
+     * The path of a url relative to root, without a trailing slash
+     */
+    private static String relative(final URI root, final URI url) {
+        return url.toASCIIString().substring(root.toASCIIString().length()).replaceAll("/$", "");
     }
 
     /**
@@ -212,7 +490,9 @@ public class Dist {
                               final @Out PrintStream out) throws IOException {
 
         final URI releaseUri = releases.resolve(releaseDirectory);
-        exec("svn", "-m", format("[release-tools] remove release %s", releaseDirectory), "rm", releaseUri.toASCIIString());
+        try (final Svn svn = Svn.open(out)) {
+            svn.delete(format("[release-tools] remove release %s", releaseDirectory), releaseUri.toASCIIString());
+        }
     }
 
     /**
@@ -224,7 +504,9 @@ public class Dist {
     public void listReleases(@Option("release-repo") @Default("https://dist.apache.org/repos/dist/release/tomee/") final URI releases,
                              final @Out PrintStream out) throws IOException {
 
-        exec("svn", "list", releases.toASCIIString());
+        try (final Svn svn = Svn.open(out)) {
+            svn.list(releases.toASCIIString()).forEach(out::println);
+        }
     }
 
     @Command("add-key")
@@ -232,19 +514,22 @@ public class Dist {
                        @Option("release-repo") @Default("https://dist.apache.org/repos/dist/release/tomee/") final URI releases,
                        @Out final PrintStream out) throws IOException {
 
-        final File tmpdir = Files.tmpdir();
-        //svn checkout https://dist.apache.org/repos/dist/release/tomee/ --depth files
-        exec("svn", "checkout", releases.toASCIIString(), tmpdir.getAbsolutePath(), "--depth", "files");
+        try (final Svn svn = Svn.open(out)) {
+            final File tmpdir = Files.tmpdir();
+            //svn checkout https://dist.apache.org/repos/dist/release/tomee/ --depth files
+            svn.checkout(releases.toASCIIString(), tmpdir, Svn.Depth.FILES);
 
-        final File keys = new File(tmpdir, "KEYS");
-        final String contents = IO.slurp(publicKey);
-        try (final PrintStream keysStream = new PrintStream(IO.write(keys, true))) {
-            keysStream.println();
-            keysStream.println(contents);
+            final File keys = new File(tmpdir, "KEYS");
+            final String contents = IO.slurp(publicKey);
+            try (final PrintStream keysStream = new PrintStream(IO.write(keys, true))) {
+                keysStream.println();
+                keysStream.println(contents);
+            }
+            final URI keysUri = releases.resolve("KEYS");
+            svn.commit(format("[release-tools] add key to %s", keysUri), keys);
+            out.printf("Key added to %s%n", keysUri);
+            out.println(svn);
         }
-        final URI keysUri = releases.resolve("KEYS");
-        exec("svn", "-m", format("[release-tools] add key to %s", keysUri), "ci", keys.getAbsolutePath());
-        out.printf("Key added to %s%n", keysUri);
     }
 
     /**
@@ -261,65 +546,911 @@ public class Dist {
         return format.format(new Date());
     }
 
-    public static class MavenRepo {
-        private final CloseableHttpClient client = HttpClientBuilder.create().disableContentCompression().build();
+    public static class MavenRepo implements Closeable {
+        private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+        private final CloseableHttpClient client;
         private final URI repo;
         private final PrintStream out;
+        private final int segments;
+        private final long segmentThreshold;
+        private final ExecutorService segmentExecutor;
+        private final ArtifactCache cache = ArtifactCache.global();
+        private final ListingCache listings = ListingCache.global();
+        private final Set<HttpGet> inFlight = ConcurrentHashMap.newKeySet();
 
         public MavenRepo(final URI repo, final PrintStream out) {
+            this(repo, out, 1, 2);
+        }
+
+        public MavenRepo(final URI repo, final PrintStream out, final int parallelism, final int connectionsPerHost) {
+            this(repo, out, parallelism, connectionsPerHost, 1, Long.MAX_VALUE);
+        }
+
+        /**
+         * @param parallelism the number of files downloaded concurrently, sizing the connection and segment pools
+         * @param connectionsPerHost the maximum number of pooled keep-alive connections to a single host
+         * @param segments the number of byte ranges fetched in parallel for a large binary, 1 disables segmenting.
+         *                 Lowered to connectionsPerHost / parallelism so every range in flight fits in the pool
+         * @param segmentThreshold the size in bytes above which a binary is downloaded in segments
+         */
+        public MavenRepo(final URI repo, final PrintStream out, final int parallelism, final int connectionsPerHost,
+                         final int segments, final long segmentThreshold) {
+            if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+            if (connectionsPerHost < 1) throw new IllegalArgumentException("connections-per-host must be at least 1: " + connectionsPerHost);
+            if (segments < 1) throw new IllegalArgumentException("segments must be at least 1: " + segments);
+
+            final int fitting = Math.min(segments, Math.max(1, connectionsPerHost / parallelism));
+            if (fitting < segments) {
+                out.printf("Downloading in %s segments per file to stay within %s connections per host%n", fitting, connectionsPerHost);
+            }
+
+            final PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+            connections.setDefaultMaxPerRoute(connectionsPerHost);
+            connections.setMaxTotal(connectionsPerHost);
+
+            this.client = HttpClientBuilder.create()
+                    .disableContentCompression()
+                    .setConnectionManager(connections)
+                    .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                    .build();
             this.repo = repo;
             this.out = out;
+            this.segments = fitting;
+            this.segmentThreshold = segmentThreshold;
+            this.segmentExecutor = Executors.newFixedThreadPool(parallelism * fitting, Threads.daemon("segment"));
         }
 
+        /**
+         * Lists the zip and tar.gz files of the version along with their asc
+         * and sha1 files.
+         *
+         * When the artifact has a maven-metadata.xml listing the version the
+         * files are listed with the Nexus content API, or the Central search
+         * API when the repository is Central.  The HTML index of the version
+         * directory is only scraped when the metadata does not list the
+         * version or neither API can answer.  Every listing
+         * is cached and revalidated with If-None-Match and If-Modified-Since.
+         */
         public List<URI> binaries(final String artifactPath, final String version) throws IOException {
             final URI artifactDir = this.repo.resolve(artifactPath);
 
             final URI versionDir = artifactDir.resolve(version + "/");
-            final CloseableHttpResponse response = get(versionDir);
 
-            final List<String> hrefs = new ArrayList<>();
-            StreamBuilder.create(response.getEntity().getContent())
-                    .watch("<a href=\"", "\"", hrefs::add)
-                    .run();
+            final Document metadata = xml(fetch(artifactDir.resolve("maven-metadata.xml"), "application/xml"));
+
+            List<String> names = null;
+            if (metadata != null && lists(metadata, version)) {
+                names = nexusListing(versionDir);
+                if (names == null) names = centralListing(metadata, version);
+            }
+
+            if (names == null) {
+                names = htmlListing(versionDir);
+            }
 
             final Predicate<String> acceptedExtensions = Pattern.compile("\\.(zip|tar\\.gz)(\\.(asc|sha1))?$").asPredicate();
-            return hrefs.stream()
+            return names.stream()
                     .filter(acceptedExtensions)
                     .map(versionDir::resolve)
                     .collect(Collectors.toList());
         }
 
-        private CloseableHttpResponse get(final URI uri) throws IOException {
-            final CloseableHttpResponse response = client.execute(new HttpGet(uri));
+        /**
+         * Asks the Nexus REST API for the content of the version directory.
+         * Returns null if the repository is not a Nexus content url.
+         */
+        private List<String> nexusListing(final URI versionDir) throws IOException {
+            final Matcher matcher = Pattern.compile("(.*)/content/(repositories|groups)/([^/]+)/(.*)").matcher(versionDir.toString());
+            if (!matcher.matches()) return null;
+
+            // the content urls say groups, the REST API calls them repo_groups
+            final String type = "groups".equals(matcher.group(2)) ? "repo_groups" : matcher.group(2);
+            final URI api = URI.create(String.format("%s/service/local/%s/%s/content/%s",
+                    matcher.group(1), type, matcher.group(3), matcher.group(4)));
+
+            final Document listing = xml(fetch(api, "application/xml"));
+            if (listing == null) return null;
+
+            final List<String> names = new ArrayList<>();
+            final NodeList items = listing.getElementsByTagName("content-item");
+            for (int i = 0; i < items.getLength(); i++) {
+                final Element item = (Element) items.item(i);
+                if ("true".equals(text(item, "leaf"))) {
+                    names.add(text(item, "text"));
+                }
+            }
+            return names;
+        }
+
+        /**
+         * Asks the Central search API for the classifiers and extensions
+         * published for the version.  Central always publishes the asc and
+         * sha1 files next to each file, so those are implied.  Returns null
+         * if the repository is not Central or the version is not indexed.
+         */
+        private List<String> centralListing(final Document metadata, final String version) throws IOException {
+            final String host = repo.getHost();
+            if (!"repo1.maven.org".equals(host) && !"repo.maven.apache.org".equals(host)) return null;
+
+            final String groupId = text(metadata.getDocumentElement(), "groupId");
+            final String artifactId = text(metadata.getDocumentElement(), "artifactId");
+            if (groupId == null || artifactId == null) return null;
+
+            final String query = String.format("g:\"%s\" AND a:\"%s\" AND v:\"%s\"", groupId, artifactId, version);
+            final URI search = URI.create("https://search.maven.org/solrsearch/select?core=gav&rows=1&wt=xml&q="
+                    + URLEncoder.encode(query, "UTF-8"));
+
+            final Document result = xml(fetch(search, "application/xml"));
+            if (result == null) return null;
+
+            final List<String> names = new ArrayList<>();
+            final NodeList arrays = result.getElementsByTagName("arr");
+            for (int i = 0; i < arrays.getLength(); i++) {
+                final Element array = (Element) arrays.item(i);
+                if (!"ec".equals(array.getAttribute("name"))) continue;
+
+                final NodeList extensions = array.getElementsByTagName("str");
+                for (int j = 0; j < extensions.getLength(); j++) {
+                    final String name = artifactId + "-" + version + extensions.item(j).getTextContent().trim();
+                    names.add(name);
+                    names.add(name + ".asc");
+                    names.add(name + ".sha1");
+                }
+            }
+
+            return names.isEmpty() ? null : names;
+        }
+
+        private List<String> htmlListing(final URI versionDir) throws IOException {
+            final byte[] html = fetch(versionDir, "text/html");
+            if (html == null) {
+                throw new CommandFailedException(format("No such version directory %s", versionDir));
+            }
+
+            final List<String> hrefs = new ArrayList<>();
+            StreamBuilder.create(new ByteArrayInputStream(html))
+                    .watch("<a href=\"", "\"", hrefs::add)
+                    .run();
+            return hrefs;
+        }
+
+        /**
+         * GETs a small listing, revalidating any cached copy with its ETag or
+         * Last-Modified date.  Returns null if the server has no such file.
+         */
+        private byte[] fetch(final URI uri, final String accept) throws IOException {
+            final String key = accept + " " + uri;
+            final ListingCache.Entry cached = listings.get(key);
+
+            final HttpGet request = new HttpGet(uri);
+            request.setHeader("Accept", accept);
+            if (cached != null && cached.getEtag() != null) request.setHeader("If-None-Match", cached.getEtag());
+            if (cached != null && cached.getLastModified() != null) request.setHeader("If-Modified-Since", cached.getLastModified());
+
+            try (final CloseableHttpResponse response = client.execute(request)) {
+                final int status = response.getStatusLine().getStatusCode();
+
+                if (status == 304 && cached != null) {
+                    EntityUtils.consume(response.getEntity());
+                    return cached.getContent();
+                }
+
+                if (status == 404) {
+                    EntityUtils.consume(response.getEntity());
+                    return null;
+                }
+
+                if (status != 200) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new UnexpectedHttpResponseException("GET", uri, response.getStatusLine());
+                }
+
+                final byte[] content = EntityUtils.toByteArray(response.getEntity());
+                listings.put(key, header(response, "ETag"), header(response, "Last-Modified"), content);
+                return content;
+            }
+        }
+
+        private static String header(final HttpResponse response, final String name) {
+            final Header header = response.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        }
+
+        /**
+         * Parses the bytes as xml, returning null if they are absent or are
+         * not xml at all, as happens when a server ignores the Accept header
+         */
+        private static Document xml(final byte[] bytes) {
+            if (bytes == null) return null;
+            try {
+                final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                return factory.newDocumentBuilder().parse(new ByteArrayInputStream(bytes));
+            } catch (final ParserConfigurationException | SAXException | IOException e) {
+                return null;
+            }
+        }
+
+        private static boolean lists(final Document metadata, final String version) {
+            final NodeList lists = metadata.getElementsByTagName("versions");
+            if (lists.getLength() == 0) return false;
+
+            final NodeList versions = ((Element) lists.item(0)).getElementsByTagName("version");
+            for (int i = 0; i < versions.getLength(); i++) {
+                if (version.equals(versions.item(i).getTextContent().trim())) return true;
+            }
+            return false;
+        }
+
+        private static String text(final Element parent, final String tag) {
+            final NodeList nodes = parent.getElementsByTagName(tag);
+            return nodes.getLength() > 0 ? nodes.item(0).getTextContent().trim() : null;
+        }
+
+        /**
+         * Lists the binaries of the artifact, each paired with the asc and
+         * sha1 files published alongside it
+         */
+        public List<Artifact> artifacts(final String artifactPath, final String version) throws IOException {
+            final List<URI> uris = binaries(artifactPath, version);
+
+            return uris.stream()
+                    .filter(MavenRepo::isBinary)
+                    .map(binary -> new Artifact(binary, uris.stream()
+                            .filter(uri -> uri.getPath().startsWith(binary.getPath() + "."))
+                            .collect(Collectors.toList())))
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Returns the file at the repository path from the shared artifact
+         * cache, downloading it only if no file with the same SHA-1 is cached.
+         * The returned file belongs to the cache and must not be modified.
+         */
+        public File resolve(final String path) throws IOException {
+            final URI uri = repo.resolve(path);
+
+            String sha1 = null;
+            try (final CloseableHttpResponse response = get(new HttpGet(URI.create(uri + ".sha1")))) {
+                sha1 = ArtifactCache.sha1(response.getEntity().getContent());
+            } catch (final UnexpectedHttpResponseException e) {
+                out.println("No sha1 for " + uri);
+            }
+
+            return cache.resolve(ArtifactCache.key(uri), sha1, file -> {
+                out.println("Downloading " + uri);
+                try (final CloseableHttpResponse response = get(new HttpGet(uri));
+                     final FileOutputStream os = new FileOutputStream(file)) {
+                    Pipe.copy(response.getEntity().getContent(), os.getChannel());
+                }
+            });
+        }
+
+        private CloseableHttpResponse get(final HttpGet request) throws IOException {
+            final CloseableHttpResponse response = client.execute(request);
             if (response.getStatusLine().getStatusCode() != 200) {
                 EntityUtils.consume(response.getEntity());
-                throw new UnexpectedHttpResponseException("GET", uri, response.getStatusLine());
+                response.close();
+                throw new UnexpectedHttpResponseException("GET", request.getURI(), response.getStatusLine());
             }
             return response;
         }
 
-        public Consumer<URI> downloadTo(final File directory) {
-            return downloadTo(directory, false);
+        /**
+         * Downloads the asc and sha1 files of the artifact followed by the
+         * binary itself, which is verified against the sha1 as it arrives
+         */
+        public Download download(final Artifact artifact, final File directory) throws IOException {
+            for (final URI sidecar : artifact.getSidecars()) {
+                download(sidecar, directory, false, new HttpGet(sidecar));
+            }
+            return download(artifact.getBinary(), directory, false, new HttpGet(artifact.getBinary()));
+        }
+
+        /**
+         * Streams the uri into a .part file and moves it into place once complete.
+         * Binaries are digested on the way to disk; the .part file is only moved
+         * into place if the SHA-1 matches the already downloaded .sha1 file, after
+         * which the .sha256 and .sha512 files are written from the same digests.
+         *
+         * Progress is recorded in a journal next to the .part file.  If a download
+         * is interrupted the .part file is kept and the next attempt continues with
+         * a Range request, guarded by If-Range so a changed file starts over.
+         *
+         * Binaries larger than the segment threshold are fetched as several byte
+         * ranges in parallel when the server advertises Accept-Ranges.
+         */
+        private Download download(final URI uri, final File directory, final boolean overwrite, final HttpGet request) throws IOException {
+            final String name = uri.getPath().replaceAll(".*/", "");
+            final File file = new File(directory, name);
+
+            if (file.exists() && !overwrite) {
+                out.println("Downloaded " + uri);
+                return new Download(file, null);
+            }
+
+            final Journal journal = Journal.of(new File(directory, name + ".part"));
+            if (overwrite) {
+                journal.discard();
+            }
+
+            if (isBinary(uri)) {
+                final Download cached = fromCache(uri, file, journal);
+                if (cached != null) return cached;
+            }
+
+            if (isBinary(uri) && segments > 1 && journal.getReceived() == 0) {
+                final Probe probe = journal.isSegmented() ? null : probe(uri);
+
+                if (journal.isSegmented() || probe != null) {
+                    try {
+                        return downloadSegmented(uri, file, journal, probe);
+                    } catch (final RangeIgnoredException e) {
+                        out.printf("Ranges not honored for %s, downloading as a single stream%n", uri);
+                        journal.discard();
+                    }
+                }
+            }
+
+            return downloadStream(uri, file, journal, request);
+        }
+
+        private Download downloadStream(final URI uri, final File file, final Journal journal, final HttpGet request) throws IOException {
+            final long offset = journal.getReceived();
+            if (offset > 0 && journal.getValidator() != null) {
+                request.setHeader("Range", "bytes=" + offset + "-");
+                request.setHeader("If-Range", journal.getValidator());
+                out.printf("Resuming %s at %s bytes%n", uri, offset);
+            } else {
+                out.println("Downloading " + uri);
+            }
+
+            inFlight.add(request);
+            try (final CloseableHttpResponse response = client.execute(request)) {
+                final int status = response.getStatusLine().getStatusCode();
+
+                if (status == 416) {
+                    // Our partial file is no longer a prefix of what the server has
+                    EntityUtils.consume(response.getEntity());
+                    journal.discard();
+                    return downloadStream(uri, file, journal, new HttpGet(uri));
+                }
+
+                final boolean resumed = status == 206 && request.containsHeader("Range");
+                if (status != 200 && !resumed) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new UnexpectedHttpResponseException("GET", uri, response.getStatusLine());
+                }
+
+                final long[] range = resumed ? contentRange(response) : null;
+                if (resumed && (range == null || range[0] != offset)) {
+                    // Appending bytes from anywhere but our offset would corrupt the .part file
+                    EntityUtils.consume(response.getEntity());
+                    out.printf("Unexpected Content-Range for %s, downloading it again%n", uri);
+                    journal.discard();
+                    return downloadStream(uri, file, journal, new HttpGet(uri));
+                }
+
+                journal.begin(resumed ? offset : 0, response);
+
+                final Digests digests = isBinary(uri) ? Digests.of(Digests.SHA1, Digests.SHA256, Digests.SHA512) : Digests.of();
+
+                if (resumed) {
+                    try (final InputStream existing = IO.read(journal.getPart())) {
+                        digests.update(existing);
+                    }
+                }
+
+                try (final InputStream in = response.getEntity().getContent();
+                     final OutputStream os = journal.append()) {
+                    digests.copy(in, os);
+                }
+
+                return commit(uri, file, journal, digests);
+            } catch (final IOException | RuntimeException e) {
+                journal.save();
+                throw e;
+            } finally {
+                inFlight.remove(request);
+            }
+        }
+
+        /**
+         * Preallocates the .part file and fetches each segment on its own
+         * connection, writing straight to its offset with positional writes.
+         * The file is digested in one pass once every segment is in place.
+         */
+        private Download downloadSegmented(final URI uri, final File file, final Journal journal, final Probe probe) throws IOException {
+            if (probe != null) {
+                journal.beginSegmented(probe.length, probe.validator, segments);
+                out.printf("Downloading %s in %s segments%n", uri, journal.getSegmentCount());
+            } else {
+                out.printf("Resuming %s in %s segments%n", uri, journal.getSegmentCount());
+            }
+
+            final Set<HttpGet> requests = ConcurrentHashMap.newKeySet();
+            final List<Future<Void>> futures = new ArrayList<>();
+
+            try (final FileChannel channel = FileChannel.open(journal.getPart().toPath(), StandardOpenOption.WRITE)) {
+                for (int i = 0; i < journal.getSegmentCount(); i++) {
+                    final int segment = i;
+                    futures.add(segmentExecutor.submit(() -> {
+                        fetchSegment(uri, channel, journal, segment, requests);
+                        return null;
+                    }));
+                }
+
+                for (final Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                journal.save();
+                throw new InterruptedIOException("Interrupted while downloading " + uri);
+            } catch (final ExecutionException e) {
+                journal.save();
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+                requests.forEach(HttpGet::abort);
+            }
+
+            final Digests digests = Digests.of(Digests.SHA1, Digests.SHA256, Digests.SHA512);
+            try (final InputStream in = IO.read(journal.getPart())) {
+                digests.update(in);
+            }
+
+            return commit(uri, file, journal, digests);
+        }
+
+        private void fetchSegment(final URI uri, final FileChannel channel, final Journal journal, final int segment,
+                                  final Set<HttpGet> requests) throws IOException {
+            long position = journal.getSegmentStart(segment) + journal.getSegmentReceived(segment);
+            final long end = journal.getSegmentEnd(segment);
+            if (position > end) return;
+
+            final HttpGet request = new HttpGet(uri);
+            request.setHeader("Range", "bytes=" + position + "-" + end);
+            if (journal.getValidator() != null) {
+                request.setHeader("If-Range", journal.getValidator());
+            }
+
+            requests.add(request);
+            inFlight.add(request);
+            try (final CloseableHttpResponse response = client.execute(request)) {
+                final int status = response.getStatusLine().getStatusCode();
+                if (status == 200) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new RangeIgnoredException(uri);
+                }
+                if (status != 206) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new UnexpectedHttpResponseException("GET", uri, response.getStatusLine());
+                }
+
+                final long[] range = contentRange(response);
+                if (range == null || range[0] != position || range[1] != end) {
+                    EntityUtils.consume(response.getEntity());
+                    throw new RangeIgnoredException(uri);
+                }
+
+                final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+                try (final InputStream in = response.getEntity().getContent()) {
+                    int read;
+                    while ((read = in.read(buffer.array())) != -1) {
+                        buffer.clear();
+                        buffer.limit(read);
+                        while (buffer.hasRemaining()) {
+                            position += channel.write(buffer, position);
+                        }
+                        journal.received(segment, read);
+                    }
+                }
+
+                if (position != end + 1) {
+                    throw new IOException(format("Segment %s of %s ended at byte %s, expected %s", segment, uri, position, end + 1));
+                }
+            } finally {
+                inFlight.remove(request);
+                requests.remove(request);
+            }
+        }
+
+        /**
+         * The first and last byte of a 206 response's Content-Range, or null
+         * if it has none or is not a single byte range
+         */
+        static long[] contentRange(final HttpResponse response) {
+            final Header header = response.getFirstHeader("Content-Range");
+            if (header == null) return null;
+
+            final Matcher matcher = CONTENT_RANGE.matcher(header.getValue().trim());
+            if (!matcher.matches()) return null;
+
+            return new long[]{Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2))};
+        }
+
+        /**
+         * Asks the server for the size of the file and whether it accepts byte
+         * ranges.  Returns null when the file should be fetched as a single stream.
+         */
+        private Probe probe(final URI uri) throws IOException {
+            final HttpHead request = new HttpHead(uri);
+            try (final CloseableHttpResponse response = client.execute(request)) {
+                if (response.getStatusLine().getStatusCode() != 200) return null;
+
+                final Header acceptRanges = response.getFirstHeader("Accept-Ranges");
+                if (acceptRanges == null || !"bytes".equalsIgnoreCase(acceptRanges.getValue().trim())) return null;
+
+                final Header contentLength = response.getFirstHeader("Content-Length");
+                if (contentLength == null) return null;
+
+                final long length = Long.parseLong(contentLength.getValue().trim());
+                if (length < segmentThreshold) return null;
+
+                return new Probe(length, Journal.validator(response));
+            }
+        }
+
+        /**
+         * Copies the binary out of the artifact cache if a file matching the
+         * already downloaded .sha1 is there.  Returns null on a cache miss.
+         */
+        private Download fromCache(final URI uri, final File file, final Journal journal) throws IOException {
+            final File sha1File = new File(file.getParentFile(), file.getName() + ".sha1");
+            if (!sha1File.exists()) return null;
+
+            final String sha1;
+            try (final InputStream in = IO.read(sha1File)) {
+                sha1 = ArtifactCache.sha1(in);
+            }
+
+            final File object = cache.get(sha1);
+            if (object == null) return null;
+
+            out.println("Cached " + uri);
+            journal.discard();
+
+            final Digests digests = Digests.of(Digests.SHA1, Digests.SHA256, Digests.SHA512);
+            try (final InputStream in = IO.read(object);
+                 final OutputStream os = IO.write(journal.getPart())) {
+                digests.copy(in, os);
+            }
+
+            return commit(uri, file, journal, digests);
+        }
+
+        /**
+         * Moves a completed .part file into place.  For binaries the SHA-1 is
+         * verified first and the .sha256 and .sha512 files written afterwards.
+         */
+        private Download commit(final URI uri, final File file, final Journal journal, final Digests digests) throws IOException {
+            if (!isBinary(uri)) {
+                move(journal.getPart(), file);
+                journal.complete();
+                return new Download(file, null);
+            }
+
+            final Map<String, String> hashes = digests.hex();
+            final Binary binary = Dir.of(Binary.class, file);
+            if (!binary.verifySha1(hashes)) {
+                journal.discard();
+                throw new CommandFailedException(format("SHA1 check failed %s", uri));
+            }
+
+            move(journal.getPart(), file);
+            journal.complete();
+            DigestCache.global().put(file, hashes);
+            binary.createSha256(hashes);
+            binary.createSha512(hashes);
+            out.println("Verified " + file.getName());
+
+            try {
+                cache.put(ArtifactCache.key(uri), file, hashes.get(Digests.SHA1));
+            } catch (final IOException e) {
+                out.println("Could not cache " + file.getName() + ": " + e.getMessage());
+            }
+            return new Download(file, hashes);
+        }
+
+        private static void move(final File source, final File destination) throws IOException {
+            java.nio.file.Files.move(source.toPath(), destination.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
         }
 
-        public Consumer<URI> downloadTo(final File directory, final boolean overwrite) {
-            return uri -> {
+        private static boolean isBinary(final URI uri) {
+            return new Binary.Format().accept(new File(uri.getPath()));
+        }
+
+        /**
+         * Aborts any download still in flight, for example when another download
+         * failed, and gives each a moment to record its progress in the journal
+         * before the connection pool is shut down.
+         */
+        @Override
+        public void close() throws IOException {
+            inFlight.forEach(HttpGet::abort);
+
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+            while (!inFlight.isEmpty() && System.currentTimeMillis() < deadline) {
                 try {
-                    final String name = uri.getPath().replaceAll(".*/", "");
-                    final File file = new File(directory, name);
-
-                    if (file.exists() && !overwrite) {
-                        out.println("Downloaded " + uri);
-                    } else {
-                        out.println("Downloading " + uri);
-                        final CloseableHttpResponse response = get(uri);
-                        IO.copy(response.getEntity().getContent(), file);
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            segmentExecutor.shutdownNow();
+            client.close();
+        }
+    }
+
+    private static class Probe {
+        private final long length;
+        private final String validator;
+
+        Probe(final long length, final String validator) {
+            this.length = length;
+            this.validator = validator;
+        }
+    }
+
+    private static class RangeIgnoredException extends IOException {
+        RangeIgnoredException(final URI uri) {
+            super("Server ignored the Range request for " + uri);
+        }
+    }
+
+    /**
+     * Tracks a partially downloaded file.  The journal records how many bytes
+     * of the .part file are known to be good along with the ETag or
+     * Last-Modified date of the response they came from.  It is checkpointed
+     * as data arrives so a killed process loses at most one checkpoint.
+     *
+     * Segmented downloads record the total length and the bytes received by
+     * each segment instead, as segments fill the .part file out of order.
+     */
+    public static class Journal {
+        private static final long CHECKPOINT = 8 * 1024 * 1024;
+
+        private final File part;
+        private final File file;
+        private long received;
+        private String validator;
+        private long length;
+        private AtomicLongArray segments;
+        private final AtomicLong unsaved = new AtomicLong();
+
+        private Journal(final File part) {
+            this.part = part;
+            this.file = new File(part.getParentFile(), part.getName() + ".journal");
+        }
+
+        public static Journal of(final File part) throws IOException {
+            final Journal journal = new Journal(part);
+
+            if (part.exists() && journal.file.exists()) {
+                final Properties properties = new Properties();
+                try (final InputStream in = IO.read(journal.file)) {
+                    properties.load(in);
+                }
+                final long recorded = Long.parseLong(properties.getProperty("received", "0"));
+                journal.received = Math.min(recorded, part.length());
+                journal.validator = properties.getProperty("validator");
+
+                final int count = Integer.parseInt(properties.getProperty("segments", "0"));
+                if (count > 0) {
+                    journal.length = Long.parseLong(properties.getProperty("length"));
+                    journal.segments = new AtomicLongArray(count);
+                    for (int i = 0; i < count; i++) {
+                        journal.segments.set(i, Long.parseLong(properties.getProperty("segment." + i, "0")));
+                    }
+                }
+            }
+
+            return journal;
+        }
+
+        public File getPart() {
+            return part;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        /**
+         * The value to send in If-Range so the server only honors
+         * our Range request if the file has not changed
+         */
+        public String getValidator() {
+            return validator;
+        }
+
+        /**
+         * Truncates the .part file to the offset the response starts at and
+         * remembers the validator of this response for any later resume
+         */
+        public void begin(final long offset, final HttpResponse response) throws IOException {
+            try (final RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.setLength(offset);
+            }
+
+            received = offset;
+            validator = validator(response);
+            segments = null;
+            save();
+        }
+
+        public boolean isSegmented() {
+            return segments != null;
+        }
+
+        public int getSegmentCount() {
+            return segments.length();
+        }
+
+        public long getSegmentStart(final int segment) {
+            return segmentSize() * segment;
+        }
+
+        public long getSegmentEnd(final int segment) {
+            return Math.min(length, segmentSize() * (segment + 1)) - 1;
+        }
+
+        public long getSegmentReceived(final int segment) {
+            return segments.get(segment);
+        }
+
+        private long segmentSize() {
+            return (length + segments.length() - 1) / segments.length();
+        }
+
+        /**
+         * Preallocates the .part file for a segmented download.  Progress of an
+         * earlier attempt is kept if it was for the same length and validator.
+         */
+        public void beginSegmented(final long length, final String validator, final int count) throws IOException {
+            if (isSegmented() && this.length == length && validator != null && validator.equals(this.validator)) {
+                return;
+            }
+
+            try (final RandomAccessFile raf = new RandomAccessFile(part, "rw")) {
+                raf.setLength(length);
+            }
+
+            this.received = 0;
+            this.length = length;
+            this.validator = validator;
+            this.segments = new AtomicLongArray(count);
+            save();
+        }
+
+        public void received(final int segment, final long bytes) {
+            segments.addAndGet(segment, bytes);
+
+            if (unsaved.addAndGet(bytes) >= CHECKPOINT) {
+                unsaved.set(0);
+                save();
+            }
+        }
+
+        public OutputStream append() throws IOException {
+            return new FilterOutputStream(new FileOutputStream(part, true)) {
+                private long unsaved;
+
+                @Override
+                public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                    out.write(bytes, offset, length);
+                    received += length;
+                    unsaved += length;
+
+                    if (unsaved >= CHECKPOINT) {
+                        out.flush();
+                        save();
+                        unsaved = 0;
                     }
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
                 }
             };
         }
+
+        public synchronized void save() {
+            if (!part.exists()) return;
+
+            final Properties properties = new Properties();
+            properties.setProperty("received", Long.toString(Math.min(received, part.length())));
+            if (validator != null) properties.setProperty("validator", validator);
+
+            if (segments != null) {
+                properties.setProperty("length", Long.toString(length));
+                properties.setProperty("segments", Integer.toString(segments.length()));
+                for (int i = 0; i < segments.length(); i++) {
+                    properties.setProperty("segment." + i, Long.toString(segments.get(i)));
+                }
+            }
+
+            try (final OutputStream os = IO.write(file)) {
+                properties.store(os, "partial download of " + part.getName());
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Cannot write journal " + file.getAbsolutePath(), e);
+            }
+        }
+
+        public void complete() {
+            file.delete();
+        }
+
+        public void discard() {
+            part.delete();
+            file.delete();
+            received = 0;
+            validator = null;
+            length = 0;
+            segments = null;
+        }
+
+        static String validator(final HttpResponse response) {
+            final Header etag = response.getFirstHeader("ETag");
+            if (etag != null && !etag.getValue().startsWith("W/")) {
+                return etag.getValue();
+            }
+
+            final Header lastModified = response.getFirstHeader("Last-Modified");
+            return lastModified != null ? lastModified.getValue() : null;
+        }
+    }
+
+    public static class Artifact {
+        private final URI binary;
+        private final List<URI> sidecars;
+
+        public Artifact(final URI binary, final List<URI> sidecars) {
+            this.binary = binary;
+            this.sidecars = sidecars;
+        }
+
+        public URI getBinary() {
+            return binary;
+        }
+
+        public List<URI> getSidecars() {
+            return sidecars;
+        }
+
+        @Override
+        public String toString() {
+            return binary.toString();
+        }
+    }
+
+    public static class Download {
+        private final File file;
+        private final Map<String, String> digests;
+
+        public Download(final File file, final Map<String, String> digests) {
+            this.file = file;
+            this.digests = digests;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * The digests computed while downloading or null if the
+         * file was not a binary or was already on disk
+         */
+        public Map<String, String> getDigests() {
+            return digests;
+        }
+
+        public boolean isVerified() {
+            return digests != null;
+        }
     }
 
     public interface Work extends Dir {
@@ -330,19 +1461,48 @@ public class Dist {
 
     public interface Binary extends Dir {
 
+        /**
+         * Reads the binary once and returns the SHA-1, SHA-256 and SHA-512 digests.
+         * Digests already computed for this exact file are reused from the
+         * {@link DigestCache} rather than hashing the binary again.
+         */
+        default Map<String, String> digests() {
+            return digests(Digests.SHA1, Digests.SHA256, Digests.SHA512);
+        }
+
+        default Map<String, String> digests(final String... algorithms) {
+            try {
+                return DigestCache.global().digest(get(), algorithms);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         default boolean verifySha1() {
+            return verifySha1(digests(Digests.SHA1));
+        }
+
+        default boolean verifySha1(final Map<String, String> digests) {
             final String expectedSha1 = slurp(sha1());
-            final String actualSha1 = hash("SHA-1");
+            final String actualSha1 = digests.get(Digests.SHA1);
             return expectedSha1.equals(actualSha1);
         }
 
         default void createSha256() {
-            final String sha256 = hash("SHA-256") + getTabbedFilename();
+            createSha256(digests(Digests.SHA256));
+        }
+
+        default void createSha256(final Map<String, String> digests) {
+            final String sha256 = digests.get(Digests.SHA256) + getTabbedFilename();
             write(sha256, sha256());
         }
 
         default void createSha512() {
-            final String sha512 = hash("SHA-512") + getTabbedFilename();
+            createSha512(digests(Digests.SHA512));
+        }
+
+        default void createSha512(final Map<String, String> digests) {
+            final String sha512 = digests.get(Digests.SHA512) + getTabbedFilename();
             write(sha512, sha512());
         }
 
@@ -383,18 +1543,7 @@ public class Dist {
         }
 
         default String hash(final String type) {
-            try {
-                final MessageDigest digest = MessageDigest.getInstance(type);
-                try (final InputStream inputStream = IO.read(get())) {
-                    final DigestInputStream digestInputStream = new DigestInputStream(inputStream, digest);
-                    IO.copy(digestInputStream, IO.IGNORE_OUTPUT);
-                    return Hex.toString(digest.digest());
-                }
-            } catch (NoSuchAlgorithmException e) {
-                throw new IllegalStateException("Unknown algorithm " + type, e);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
+            return digests(type).get(type);
         }
 
         static String slurp(final File file) {
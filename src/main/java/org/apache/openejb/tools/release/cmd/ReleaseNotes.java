@@ -16,14 +16,13 @@
  */
 package org.apache.openejb.tools.release.cmd;
 
-import com.atlassian.jira.rest.client.api.SearchRestClient;
-import com.atlassian.jira.rest.client.api.domain.Issue;
-import com.atlassian.jira.rest.client.api.domain.IssueLink;
-import com.atlassian.jira.rest.client.api.domain.IssueLinkType;
 import com.atlassian.jira.rest.client.api.domain.IssueType;
-import com.atlassian.jira.rest.client.api.domain.SearchResult;
 import lombok.Getter;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.jira.IssueCache;
+import org.apache.openejb.tools.release.jira.IssueRecord;
+import org.apache.openejb.tools.release.jira.JiraMetadata;
+import org.apache.openejb.tools.release.jira.JqlSearch;
 import org.tomitribe.crest.api.Command;
 import org.tomitribe.crest.api.Default;
 import org.tomitribe.crest.api.Option;
@@ -35,6 +34,7 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -47,14 +47,26 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.atlassian.jira.rest.client.api.domain.IssueLinkType.Direction.OUTBOUND;
-
 /**
  * @version $Rev$ $Date$
  */
 @Command("release-notes")
 public class ReleaseNotes {
 
+    /**
+     * Issue types given a section of their own, in the order printed
+     */
+    private static final List<String> SECTIONS = Arrays.asList(
+            "Dependency upgrade",
+            "New Feature",
+            "Bug",
+            "Improvement",
+            "Task",
+            "Documentation",
+            "Sub-task",
+            "Wish"
+    );
+
     /**
      * Generate asciidoc release notes for the specified TomEE version.  The resulting
      * asciidoc can be piped to a file in the `tomee-site-generator` repo.  For example:
@@ -87,28 +99,25 @@ public class ReleaseNotes {
         }
 
         final Client client = account.getClient();
-        final SearchRestClient searchClient = client.getSearchClient();
 
-        final Map<String, Issue> issuesByKey = new HashMap<>();
-        for (final String ver : versions) {
-            final String s = "project = TOMEE AND status = Resolved AND fixVersion = " + ver;
-            final SearchResult result = searchClient.searchJql(s).get();
+        final List<String> queries = versions.stream()
+                .map(ver -> "project = TOMEE AND status = Resolved AND fixVersion = " + ver)
+                .collect(Collectors.toList());
 
-            for (final Issue issue : result.getIssues()) {
-                issuesByKey.put(issue.getKey(), issue);
-            }
+        final Map<String, IssueRecord> issuesByKey;
+        try (final JqlSearch search = new JqlSearch(client.getSearchClient())) {
+            issuesByKey = search.query(IssueCache.global(), queries);
         }
 
-        final List<IssueType> sections = Arrays.asList(
-                client.getIssueType("Dependency upgrade"),
-                client.getIssueType("New Feature"),
-                client.getIssueType("Bug"),
-                client.getIssueType("Improvement"),
-                client.getIssueType("Task"),
-                client.getIssueType("Documentation"),
-                client.getIssueType("Sub-task"),
-                client.getIssueType("Wish")
-        );
+        final JiraMetadata metadata = JiraMetadata.load("rest", Collections.<String>emptyList(),
+                JiraMetadata.of(SECTIONS, name -> {
+                    final IssueType type = client.getIssueType(name);
+                    return type != null ? type.getId() : null;
+                }));
+
+        final List<String> sections = SECTIONS.stream()
+                .filter(metadata.getIssueTypes()::containsKey)
+                .collect(Collectors.toList());
 
         return out -> {
             out.println("= Apache TomEE " + version + " Release Notes\n" +
@@ -116,16 +125,16 @@ public class ReleaseNotes {
                     ":jbake-type: page\n" +
                     ":jbake-status: published");
 
-            final List<Issue> cveIssues = new ArrayList<>();
+            final List<IssueRecord> cveIssues = new ArrayList<>();
 
-            for (final IssueType section : sections) {
+            for (final String section : sections) {
 
-                final Map<Boolean, List<Issue>> issuesPartitionedByCve = issuesByKey.values()
-                        .stream().filter(issue -> issue.getIssueType().getName().equals(section.getName()))
+                final Map<Boolean, List<IssueRecord>> issuesPartitionedByCve = issuesByKey.values()
+                        .stream().filter(issue -> section.equals(issue.getType()))
                         .collect(Collectors.partitioningBy(issue ->
                                 issue.getLabels().stream().anyMatch(label -> "cve".equals(label.toLowerCase(Locale.ROOT)))));
 
-                final List<Issue> issues = Stream.of(issuesPartitionedByCve.values())
+                final List<IssueRecord> issues = Stream.of(issuesPartitionedByCve.values())
                         .flatMap(Collection::stream).flatMap(Collection::stream)
                         .collect(Collectors.toList());
 
@@ -134,11 +143,11 @@ public class ReleaseNotes {
                 cveIssues.addAll(issuesPartitionedByCve.get(true));
 
                 out.println();
-                out.printf("== %s%n", section.getName());
+                out.printf("== %s%n", section);
                 out.println();
                 out.println("[.compact]");
 
-                if (section.getName().equals("Dependency upgrade")) {
+                if (section.equals("Dependency upgrade")) {
                     removeSuperseded(issues).stream()
                             .map(Upgrade::new)
                             .sorted(Comparator.comparing(Upgrade::getSummary))
@@ -150,7 +159,7 @@ public class ReleaseNotes {
 
                             });
                 } else {
-                    for (final Issue issue : issues) {
+                    for (final IssueRecord issue : issues) {
                         out.printf(" - link:https://issues.apache.org/jira/browse/%s[%s] %s%n",
                                 issue.getKey(),
                                 issue.getKey(),
@@ -167,7 +176,7 @@ public class ReleaseNotes {
                 out.println();
                 out.println("[.compact]");
 
-                for (final Issue issue : cveIssues) {
+                for (final IssueRecord issue : cveIssues) {
                     out.printf(" - link:https://issues.apache.org/jira/browse/%s[%s] %s%n",
                             issue.getKey(),
                             issue.getKey(),
@@ -177,17 +186,16 @@ public class ReleaseNotes {
         };
     }
 
-    public static Collection<Issue> removeSuperseded(final List<Issue> issues) {
-        final Map<String, Issue> map = new HashMap<>();
+    public static Collection<IssueRecord> removeSuperseded(final List<IssueRecord> issues) {
+        final Map<String, IssueRecord> map = new HashMap<>();
         issues.forEach(issue -> map.put(issue.getKey(), issue));
 
-        for (final Issue issue : issues) {
-            for (final IssueLink link : issue.getIssueLinks()) {
-                final IssueLinkType linkType = link.getIssueLinkType();
-                if (!"Supercedes".equalsIgnoreCase(linkType.getName())) continue;
-                if (!OUTBOUND.equals(linkType.getDirection())) continue;
+        for (final IssueRecord issue : issues) {
+            for (final IssueRecord.Link link : issue.getLinks()) {
+                if (!"Supercedes".equalsIgnoreCase(link.getType())) continue;
+                if (!link.isOutbound()) continue;
 
-                map.remove(link.getTargetIssueKey());
+                map.remove(link.getTarget());
             }
         }
 
@@ -214,10 +222,10 @@ public class ReleaseNotes {
 
     @Getter
     public static class Upgrade {
-        private final Issue issue;
+        private final IssueRecord issue;
         private final String summary;
 
-        public Upgrade(final Issue issue) {
+        public Upgrade(final IssueRecord issue) {
             this.issue = issue;
             this.summary = normalize(issue.getSummary());
         }
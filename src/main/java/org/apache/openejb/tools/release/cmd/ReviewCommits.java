@@ -19,26 +19,33 @@ package org.apache.openejb.tools.release.cmd;
 import org.apache.maven.settings.Server;
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Commit;
+import org.apache.openejb.tools.release.IssueKeyScanner;
 import org.apache.openejb.tools.release.Maven;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.jira.IssueCache;
+import org.apache.openejb.tools.release.jira.IssueLoader;
+import org.apache.openejb.tools.release.jira.IssueRecord;
+import org.apache.openejb.tools.release.jira.JiraMetadata;
+import org.apache.openejb.tools.release.svn.CommitStore;
+import org.apache.openejb.tools.release.svn.Svn;
 import org.apache.openejb.tools.release.util.Exec;
 import org.apache.openejb.tools.release.util.Join;
-import org.apache.openejb.tools.release.util.ObjectList;
-import org.apache.openejb.tools.release.util.Options;
 import org.codehaus.swizzle.jira.*;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Unmarshaller;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @version $Rev$ $Date$
@@ -46,40 +53,42 @@ import java.util.Map;
 @Command
 public class ReviewCommits {
 
+    private static final IssueKeyScanner scanner = new IssueKeyScanner("OPENEJB", "TOMEE");
+
     private static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 
     public static void main(final String... args) throws Exception {
 
         final String tag = Release.tags + Release.tomeeVersionName;
 
-        final InputStream in = Exec.read("svn", "log", "--verbose", "--xml", "-rHEAD:{" + Release.lastReleaseDate + "}", tag);
-
-        final JAXBContext context = JAXBContext.newInstance(Commit.Log.class);
-        final Unmarshaller unmarshaller = context.createUnmarshaller();
-
-        final Commit.Log log = (Commit.Log) unmarshaller.unmarshal(in);
-
-        ObjectList<Commit> commits = log.getCommits();
-        commits = commits.ascending("revision");
+        final Date reviewed = new SimpleDateFormat("yyyy-MM-dd").parse("2012-01-05");
+        final Set<String> keys = new LinkedHashSet<String>();
+
+        final List<Commit> commits;
+        final Date since = new SimpleDateFormat("yyyy-MM-dd").parse(Release.lastReleaseDate);
+        try (final Svn svn = Svn.open(System.out);
+             final Stream<Commit> log = CommitStore.global().since(svn, tag, since)) {
+            commits = log
+                    // the same scan that collects the keys decides which commits cite none
+                    .filter(commit -> {
+                        final List<String> found = scanner.keys(commit.getMessage());
+                        keys.addAll(found);
+                        return found.isEmpty();
+                    })
+                    .filter(commit -> commit.getDate() != null && commit.getDate().compareTo(reviewed) > 0)
+                    .collect(Collectors.toList());
+        }
 
-        for (final Commit commit : commits) {
-            final String[] tokens = commit.getMessage().split("[^A-Z0-9-]+");
-            for (final String token : tokens) {
-                if (token.matches("(OPENEJB|TOMEE)-[0-9]+")) {
-                    try {
-                        addIssue(getJira().getIssue(token));
-                    } catch (final Exception e) {
-                        System.out.printf("Invalid JIRA '%s'\n", token);
-                    }
-                }
+        final Map<String, IssueRecord> issues = IssueCache.global().get(keys, new IssueLoader(ReviewCommits::getJira));
+        for (final String key : keys) {
+            final IssueRecord issue = issues.get(key);
+            if (issue != null) {
+                addIssue(issue.toIssue());
+            } else {
+                System.out.printf("Invalid JIRA '%s'\n", key);
             }
         }
 
-        final Date reviewed = new SimpleDateFormat("yyyy-MM-dd").parse("2012-01-05");
-        commits = commits.greater("date", reviewed);
-        commits = commits.subtract(commits.contains("message", "OPENEJB-"));
-        commits = commits.subtract(commits.contains("message", "TOMEE-"));
-
         System.out.printf("Are you ready to review %s commits?", commits.size());
         System.out.println();
 
@@ -135,26 +144,20 @@ public class ReviewCommits {
     }
 
     private static Jira jira;
-    private static List<IssueType> issueTypes = new ArrayList<IssueType>();
+    private static JiraMetadata metadata;
 
-    public static Jira getJira() {
-        final Server server = Maven.settings.getServer("apache.jira");
-        final String username = server.getUsername();
-        final String password = server.getPassword();
+    private static final List<String> issueTypes = Arrays.asList("Improvement", "New Feature", "Bug", "Task", "Dependency upgrade");
 
+    public static synchronized Jira getJira() {
         if (jira == null) {
+            final Server server = Maven.settings.getServer("apache.jira");
+            final String username = server.getUsername();
+            final String password = server.getPassword();
+
             try {
-                final Options options = new Options(System.getProperties());
                 final Jira jira = new Jira("http://issues.apache.org/jira/rpc/xmlrpc");
                 jira.login(username, password);
                 ReviewCommits.jira = jira;
-
-                issueTypes.add(jira.getIssueType("Improvement"));
-                issueTypes.add(jira.getIssueType("New Feature"));
-                issueTypes.add(jira.getIssueType("Bug"));
-                issueTypes.add(jira.getIssueType("Task"));
-                issueTypes.add(jira.getIssueType("Dependency upgrade"));
-
             } catch (final Exception e) {
                 throw new IllegalStateException(e);
             }
@@ -162,6 +165,41 @@ public class ReviewCommits {
         return jira;
     }
 
+    /**
+     * Issue types and versions, shared with UpdateJiras and only fetched
+     * (and logged in for) once the copy on disk has expired
+     */
+    public static synchronized JiraMetadata getMetadata() {
+        if (metadata == null) {
+            metadata = JiraMetadata.load("xmlrpc", Arrays.asList("TOMEE", "OPENEJB"), JiraMetadata.of(ReviewCommits::getJira));
+        }
+        return metadata;
+    }
+
+    private static List<IssueType> getIssueTypes() {
+        final List<IssueType> types = new ArrayList<IssueType>();
+        for (final String name : issueTypes) {
+            final Long id = getMetadata().getIssueType(name);
+            if (id == null) continue;
+
+            final IssueType type = new IssueType();
+            type.setId(id.intValue());
+            type.setName(name);
+            types.add(type);
+        }
+        return types;
+    }
+
+    private static Version getVersion(final Jira jira, final Project project, final String name) {
+        final IssueRecord.FixVersion fixVersion = getMetadata().getVersion(project.getKey(), name);
+        if (fixVersion == null) return jira.getVersion(project, name);
+
+        final Version version = new Version();
+        version.setId((int) fixVersion.getId());
+        version.setName(fixVersion.getName());
+        return version;
+    }
+
     public static enum Key {
         V(new Action() {
             @Override
@@ -235,15 +273,16 @@ public class ReviewCommits {
                     issue.setSummary(summary);
 
                     // Set default to Improvement
-                    issue.setType(issueTypes.get(0));
-                    for (final IssueType issueType : issueTypes) {
+                    final List<IssueType> types = getIssueTypes();
+                    issue.setType(types.get(0));
+                    for (final IssueType issueType : types) {
                         if (issueType.getName().toLowerCase().startsWith(type)) {
                             issue.setType(issueType);
                             break;
                         }
                     }
 
-                    final Version v = jira.getVersion(issue.getProject(), version);
+                    final Version v = getVersion(jira, issue.getProject(), version);
                     issue.getFixVersions().add(v);
 
                     System.out.printf("%s %s\n%s %s\n", issue.getProject(), issue.getSummary(), issue.getType(), Join.join(",", issue.getFixVersions()));
@@ -300,7 +339,13 @@ public class ReviewCommits {
 
             final String newMessage = String.format("%s\n%s: %s", oldMessage, issue.getKey(), issue.getSummary());
 
-            Exec.exec("svn", "propset", "-r", commit.getRevision() + "", "--revprop", "svn:log", newMessage, "https://svn.apache.org/repos/asf");
+            try (final Svn svn = Svn.open(System.out)) {
+                svn.setRevisionProperty("https://svn.apache.org/repos/asf", commit.getRevision(), "svn:log", newMessage);
+            }
+
+            // or the next run would still see the old message and ask again
+            CommitStore.global().update(commit.getRevision(), newMessage);
+            commit.setMessage(newMessage);
         }
 
 
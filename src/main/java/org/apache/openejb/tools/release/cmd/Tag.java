@@ -18,9 +18,9 @@ package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.svn.Svn;
 
 import static java.lang.String.format;
-import static org.apache.openejb.tools.release.util.Exec.exec;
 
 /**
  * @version $Rev$ $Date$
@@ -33,11 +33,13 @@ public class Tag {
         final String branch = Release.branches + Release.tomeeVersionName;
         final String tag = Release.tags + Release.tomeeVersionName;
 
-        if (exec("svn", "info", tag) == 0) {
-            exec("svn", "-m", format("[release-tools] recreating tag for %s", Release.tomeeVersionName), "rm", tag);
-        }
+        try (final Svn svn = Svn.open(System.out)) {
+            if (svn.exists(tag)) {
+                svn.delete(format("[release-tools] recreating tag for %s", Release.tomeeVersionName), tag);
+            }
 
-        exec("svn", "-m", format("[release-tools] creating tag for %s", Release.tomeeVersionName), "cp", branch, tag);
+            svn.copy(format("[release-tools] creating tag for %s", Release.tomeeVersionName), branch, tag);
+        }
     }
 
 }
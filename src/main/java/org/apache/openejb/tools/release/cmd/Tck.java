@@ -18,6 +18,7 @@ package org.apache.openejb.tools.release.cmd;
 
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Release;
+import org.apache.openejb.tools.release.svn.Svn;
 import org.apache.openejb.tools.release.util.Files;
 import org.apache.openejb.tools.release.util.IO;
 import org.codehaus.swizzle.stream.DelimitedTokenReplacementInputStream;
@@ -31,7 +32,6 @@ import java.io.OutputStream;
 
 import static java.lang.String.format;
 import static org.apache.openejb.tools.release.util.Exec.cd;
-import static org.apache.openejb.tools.release.util.Exec.exec;
 
 /**
  * @version $Rev$ $Date$
@@ -42,7 +42,9 @@ public class Tck {
     public static void redo() throws Exception {
         final String branch = Release.tckBranches + Release.tomeeVersionName;
 
-        exec("svn", "-m", format("[release-tools] redo tck branch for %s", Release.tomeeVersionName), "rm", branch);
+        try (final Svn svn = Svn.open(System.out)) {
+            svn.delete(format("[release-tools] redo tck branch for %s", Release.tomeeVersionName), branch);
+        }
     }
 
     public static void main(final String... args) throws Exception {
@@ -56,22 +58,24 @@ public class Tck {
 
         final String branch = Release.tckBranches + Release.tomeeVersionName;
 
-        // Make the branch
-        if (exec("svn", "info", branch) != 0) {
+        try (final Svn svn = Svn.open(System.out)) {
+            // Make the branch
+            if (!svn.exists(branch)) {
 
-            exec("svn", "-m", format("[release-tools] tck branch for %s", Release.tomeeVersionName), "cp", Release.tckTrunk.toString(), branch);
-        }
+                svn.copy(format("[release-tools] tck branch for %s", Release.tomeeVersionName), Release.tckTrunk.toString(), branch);
+            }
 
-        // Checkout the branch
-        exec("svn", "co", branch);
+            // Checkout the branch
+            svn.checkout(branch, new File(dir, Release.tomeeVersionName), Svn.Depth.INFINITY);
 
-        final File tck = cd(new File(dir + "/" + Release.tomeeVersionName));
+            final File tck = cd(new File(dir + "/" + Release.tomeeVersionName));
 
-        updatePom(Release.staging, new File(tck, "pom.xml"));
+            updatePom(Release.staging, new File(tck, "pom.xml"));
 
-        updateWebProfile(branch, tck, Release.tomeeVersion);
+            updateWebProfile(branch, tck, Release.tomeeVersion);
 
-        exec("svn", "-m", "[release-tools] update staging repo for " + Release.tomeeVersionName, "ci");
+            svn.commit("[release-tools] update staging repo for " + Release.tomeeVersionName, tck);
+        }
     }
 
     private static void updateWebProfile(final String branch, final File dir, final String version) throws IOException {
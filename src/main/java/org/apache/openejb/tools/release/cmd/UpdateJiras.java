@@ -19,22 +19,25 @@ package org.apache.openejb.tools.release.cmd;
 import org.apache.maven.settings.Server;
 import org.apache.openejb.tools.release.Command;
 import org.apache.openejb.tools.release.Commit;
+import org.apache.openejb.tools.release.IssueKeyScanner;
 import org.apache.openejb.tools.release.Maven;
 import org.apache.openejb.tools.release.Release;
-import org.apache.openejb.tools.release.util.Exec;
-import org.apache.openejb.tools.release.util.IO;
-import org.apache.openejb.tools.release.util.Options;
+import org.apache.openejb.tools.release.jira.IssueCache;
+import org.apache.openejb.tools.release.jira.IssueLoader;
+import org.apache.openejb.tools.release.jira.IssueRecord;
+import org.apache.openejb.tools.release.jira.JiraMetadata;
+import org.apache.openejb.tools.release.svn.CommitStore;
+import org.apache.openejb.tools.release.svn.Svn;
 import org.codehaus.swizzle.jira.Issue;
 import org.codehaus.swizzle.jira.Jira;
 import org.codehaus.swizzle.jira.Version;
 
-import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @version $Rev$ $Date$
@@ -47,52 +50,64 @@ public class UpdateJiras {
     public static void _main(final String... args) throws Exception {
 
         final String tag = Release.tags + Release.openejbVersionName;
+        final Date since = date.parse(Release.lastReleaseDate);
 
-        updateJiraFixVersions(tag, "HEAD", "{" + Release.lastReleaseDate + "}", Release.tomeeVersion, Release.openejbVersion);
+        final Set<String> keys;
+        try (final Svn svn = Svn.open(System.out);
+             final Stream<Commit> commits = CommitStore.global().since(svn, tag, since)) {
+            keys = getJiraKeys(commits);
+        }
+
+        updateJiraFixVersions(keys, Release.tomeeVersion, Release.openejbVersion);
     }
 
     public static void main(final String[] args) throws Exception {
 
-//        final List<String> jiraKeys = getJiraKeys("TOMEE-1TOMEE-2TOMEE-3TOMEE-4");
+//        final List<String> jiraKeys = scanner.keys("TOMEE-1TOMEE-2TOMEE-3TOMEE-4");
 //        for (String jiraKey : jiraKeys) {
 //            System.out.println(jiraKey);
 //        }
 
-        updateJiraFixVersions("http://svn.apache.org/repos/asf/tomee/tomee/branches/tomee-1.5.2", "1417791", "HEAD", "1.5.2", "4.5.2");
-    }
+        final Set<String> keys;
+        try (final Svn svn = Svn.open(System.out);
+             final Stream<Commit> commits = CommitStore.global().from(svn, "http://svn.apache.org/repos/asf/tomee/tomee/branches/tomee-1.5.2", 1417791)) {
+            keys = getJiraKeys(commits);
+        }
 
-    static final Pattern pattern = Pattern.compile("((OPENEJB|TOMEE)-[0-9]+)");
+        updateJiraFixVersions(keys, "1.5.2", "4.5.2");
+    }
 
-    private static void updateJiraFixVersions(final String repo, final String start, final String end, final String tomeeVersion, final String openejbVersion) throws Exception {
-        final InputStream in = Exec.read("svn", "log", "--verbose", "--xml", "-r" + start + ":" + end, repo);
+    static final IssueKeyScanner scanner = new IssueKeyScanner("OPENEJB", "TOMEE");
 
-        final String content = IO.slurp(in).toUpperCase();
-        System.out.println(content);
-        final Set<String> keys = new HashSet<String>(getJiraKeys(content));
+    private static Set<String> getJiraKeys(final Stream<Commit> commits) {
+        return commits
+                .flatMap(commit -> scanner.keys(commit.getMessage()).stream())
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
 
+    private static void updateJiraFixVersions(final Set<String> keys, final String tomeeVersion, final String openejbVersion) throws Exception {
         for (final String key : keys) {
             System.out.println(key);
         }
 
         final State state = new State();
-        final Version tomee = state.jira.getVersion("TOMEE", tomeeVersion);
-        final Version openejb = state.jira.getVersion("OPENEJB", openejbVersion);
-
+        final IssueRecord.FixVersion tomee = state.getVersion("TOMEE", tomeeVersion);
+        final IssueRecord.FixVersion openejb = state.getVersion("OPENEJB", openejbVersion);
 
-        jiras:
-        for (final String key : keys) {
-            if ("TOMEE-1".equals(key)) continue;
 
-            final Issue issue = state.jira.getIssue(key);
-            if (issue == null) continue;
+        final Set<String> wanted = new LinkedHashSet<String>(keys);
+        wanted.remove("TOMEE-1");
+        final Map<String, IssueRecord> issues = IssueCache.global().get(wanted, new IssueLoader(state::getJira));
 
-            final List<Version> fixVersions = issue.getFixVersions();
+        jiras:
+        for (final IssueRecord issue : issues.values()) {
+            final String key = issue.getKey();
 
-            for (final Version fixVersion : fixVersions) {
-                if (fixVersion.getReleased()) continue jiras;
+            for (final IssueRecord.FixVersion fixVersion : issue.getFixVersions()) {
+                if (fixVersion.isReleased()) continue jiras;
             }
 
-            Version version = null;
+            IssueRecord.FixVersion version = null;
             if (issue.getKey().startsWith("TOMEE")) {
                 version = tomee;
             }
@@ -103,7 +118,7 @@ public class UpdateJiras {
 
             System.out.println("Updating " + key);
             final Set<String> ids = new HashSet<String>();
-            for (final Version v : issue.getFixVersions()) {
+            for (final IssueRecord.FixVersion v : issue.getFixVersions()) {
                 if (v.getName().equals("1.6.0.beta1")) continue;
                 ids.add(v.getId() + "");
             }
@@ -117,7 +132,7 @@ public class UpdateJiras {
 
                     final Hashtable map = new Hashtable();
                     map.put("fixVersions", new Vector(ids));
-                    call(state.jira, "updateIssue", issue.getKey(), map);
+                    call(state.getJira(), "updateIssue", issue.getKey(), map);
                 } catch (final Exception e) {
                     e.printStackTrace();
                 }
@@ -128,11 +143,11 @@ public class UpdateJiras {
         if (false) for (final IssueCommits ic : state.map.values()) {
             final Issue issue = ic.getIssue();
 
-            final Version version;
+            final IssueRecord.FixVersion version;
             if (issue.getKey().startsWith("TOMEE-")) {
-                version = state.jira.getVersion("TOMEE", tomeeVersion);
+                version = state.getVersion("TOMEE", tomeeVersion);
             } else if (issue.getKey().startsWith("OPENEJB-")) {
-                version = state.jira.getVersion("OPENEJB", openejbVersion);
+                version = state.getVersion("OPENEJB", openejbVersion);
             } else {
                 continue;
             }
@@ -151,7 +166,7 @@ public class UpdateJiras {
 
                     final Hashtable map = new Hashtable();
                     map.put("fixVersions", new Vector(ids));
-                    call(state.jira, "updateIssue", issue.getKey(), map);
+                    call(state.getJira(), "updateIssue", issue.getKey(), map);
                 } catch (final Exception e) {
                     e.printStackTrace();
                 }
@@ -167,18 +182,6 @@ public class UpdateJiras {
         return false;
     }
 
-    private static List<String> getJiraKeys(final String message) {
-        final Matcher matcher = pattern.matcher(message);
-
-        final List<String> list = new ArrayList<String>();
-
-        while (matcher.find()) {
-            list.add(matcher.group());
-        }
-
-        return list;
-    }
-
     private static void call(final Jira jira, final String command, final Object... args) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
         final Method method = Jira.class.getDeclaredMethod("call", String.class, Object[].class);
         method.setAccessible(true);
@@ -188,23 +191,54 @@ public class UpdateJiras {
     public static class State {
 
         private Jira jira;
+        private JiraMetadata metadata;
         private Map<String, IssueCommits> map = new HashMap<String, IssueCommits>();
 
-        public State() throws Exception {
-            final Server server = Maven.settings.getServer("apache.jira");
-            final String username = server.getUsername();
-            final String password = server.getPassword();
+        /**
+         * Logs in on first use, so a run whose issues and versions are
+         * all cached never connects to JIRA
+         */
+        public synchronized Jira getJira() {
+            if (jira == null) {
+                final Server server = Maven.settings.getServer("apache.jira");
+                final String username = server.getUsername();
+                final String password = server.getPassword();
+
+                try {
+                    final Jira jira = new Jira("http://issues.apache.org/jira/rpc/xmlrpc");
+                    jira.login(username, password);
+                    this.jira = jira;
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return jira;
+        }
+
+        /**
+         * The named version of the project or null, fetching the metadata
+         * again if the version was created after it was cached
+         */
+        public synchronized IssueRecord.FixVersion getVersion(final String project, final String name) {
+            final List<String> projects = Arrays.asList("TOMEE", "OPENEJB");
+            if (metadata == null) {
+                metadata = JiraMetadata.load("xmlrpc", projects, JiraMetadata.of(this::getJira));
+            }
+
+            IssueRecord.FixVersion version = metadata.getVersion(project, name);
+            if (version == null) {
+                metadata = JiraMetadata.reload("xmlrpc", projects, JiraMetadata.of(this::getJira));
+                version = metadata.getVersion(project, name);
+            }
 
-            final Options options = new Options(System.getProperties());
-            jira = new Jira("http://issues.apache.org/jira/rpc/xmlrpc");
-            jira.login(username, password);
+            return version;
         }
 
         public synchronized IssueCommits get(final String key) {
             final IssueCommits commits = map.get(key);
             if (commits != null) return commits;
 
-            final IssueCommits issueCommits = new IssueCommits(jira.getIssue(key));
+            final IssueCommits issueCommits = new IssueCommits(getJira().getIssue(key));
             map.put(issueCommits.getKey(), issueCommits);
 
             return issueCommits;
@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.apache.openejb.tools.release.util.Digests;
+import org.apache.openejb.tools.release.util.Global;
+import org.apache.openejb.tools.release.util.IO;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps JIRA issues on disk so commands refetch only what changed since
+ * they last asked.
+ *
+ * Each issue is a small binary file named by its key holding its
+ * IssueRecord and when it was last known to be current.  A JQL query is a
+ * scope: a properties file recording the query, the keys it matched and
+ * when it last ran.  Asking again revalidates with the query narrowed to
+ * "updated >= -Nm", so only issues edited since come back.  A second,
+ * equally narrow "key in (...)" query finds issues that were edited out
+ * of the scope.  Lookups by key revalidate the same way.
+ *
+ * Files are replaced by atomic moves, so concurrent readers always see a
+ * whole record.  Issues live in ~/.release-tools/jira unless the
+ * release-tools.jira.dir system property says otherwise.
+ */
+public class IssueCache {
+
+    private static final int VERSION = 1;
+
+    /**
+     * How far before the last sync to look, for clock skew and for
+     * updates JIRA indexes late
+     */
+    private static final long MARGIN = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Global<IssueCache> GLOBAL = new Global<>(() -> new IssueCache(Global.dir("release-tools.jira.dir", "jira")));
+
+    private final File issues;
+    private final File scopes;
+
+    public IssueCache(final File dir) {
+        this.issues = new File(dir, "issues");
+        this.scopes = new File(dir, "scopes");
+        try {
+            Files.createDirectories(issues.toPath());
+            Files.createDirectories(scopes.toPath());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static IssueCache global() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * Runs a JQL search against JIRA
+     */
+    public interface Search {
+        List<IssueRecord> search(String jql) throws Exception;
+    }
+
+    /**
+     * Fetches issues by key, optionally narrowed by a JQL condition.
+     * Keys that do not exist or fail the condition are left out.
+     */
+    public interface Lookup {
+        Map<String, IssueRecord> lookup(Collection<String> keys, String condition) throws Exception;
+    }
+
+    /**
+     * The issues matching the query, fetching all of them the first time
+     * and only those updated since on later calls
+     */
+    public List<IssueRecord> query(final String jql, final Search search) {
+        try {
+            final File file = new File(scopes, Digests.hashName(jql) + ".properties");
+            final Scope scope = Scope.load(file);
+            final long now = System.currentTimeMillis();
+
+            final Set<String> keys = new LinkedHashSet<>();
+            final Map<String, IssueRecord> records = new LinkedHashMap<>();
+
+            if (scope == null) {
+                for (final IssueRecord record : search.search(jql)) {
+                    records.put(record.getKey(), record);
+                    keys.add(record.getKey());
+                }
+            } else {
+                keys.addAll(scope.keys);
+                final String updated = updatedSince(scope.synced, now);
+
+                final Map<String, IssueRecord> changed = new LinkedHashMap<>();
+                for (final IssueRecord record : search.search("(" + jql + ") AND " + updated)) {
+                    changed.put(record.getKey(), record);
+                }
+
+                final Set<String> gone = new HashSet<>();
+                for (final IssueRecord record : departed(new ArrayList<>(scope.keys), updated, search, gone)) {
+                    if (!changed.containsKey(record.getKey())) keys.remove(record.getKey());
+                }
+                keys.removeAll(gone);
+
+                keys.addAll(changed.keySet());
+                records.putAll(changed);
+            }
+
+            final List<IssueRecord> result = new ArrayList<>();
+            for (final String key : keys) {
+                IssueRecord record = records.get(key);
+                if (record != null) {
+                    write(record, now);
+                } else {
+                    record = read(key);
+                }
+
+                if (record == null) {
+                    // removed from the cache since the scope was saved; start over
+                    file.delete();
+                    return query(jql, search);
+                }
+                result.add(record);
+            }
+
+            new Scope(jql, now, keys).store(file);
+            return result;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to search JIRA for " + jql, e);
+        }
+    }
+
+    /**
+     * The scope's issues updated since, in batches of
+     * release-tools.jira.batch keys.  Keys JIRA reports as deleted are
+     * added to gone instead of failing the whole query.
+     */
+    private static List<IssueRecord> departed(final List<String> keys, final String updated, final Search search,
+                                              final Set<String> gone) throws Exception {
+        final int batch = Integer.getInteger("release-tools.jira.batch", 50);
+
+        final List<IssueRecord> records = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += batch) {
+            records.addAll(IssueLoader.bisect(keys.subList(i, Math.min(keys.size(), i + batch)),
+                    batchKeys -> search.search("key in (" + String.join(", ", batchKeys) + ") AND " + updated), gone));
+        }
+        return records;
+    }
+
+    /**
+     * The issues with the keys, in the order given, fetching unknown keys
+     * and revalidating known ones with a single narrow lookup.  Records
+     * are only marked as synced once every lookup has succeeded, so a
+     * failed run revalidates from the same point next time.
+     */
+    public Map<String, IssueRecord> get(final Collection<String> keys, final Lookup lookup) {
+        try {
+            final long now = System.currentTimeMillis();
+            final Map<String, IssueRecord> found = new LinkedHashMap<>();
+
+            final List<String> missing = new ArrayList<>();
+            final List<String> known = new ArrayList<>();
+            long synced = Long.MAX_VALUE;
+
+            for (final String key : new LinkedHashSet<>(keys)) {
+                final Cached cached = readCached(key);
+                if (cached == null) {
+                    missing.add(key);
+                } else {
+                    known.add(key);
+                    found.put(key, cached.record);
+                    synced = Math.min(synced, cached.synced);
+                }
+            }
+
+            if (!known.isEmpty()) {
+                found.putAll(lookup.lookup(known, updatedSince(synced, now)));
+            }
+
+            if (!missing.isEmpty()) {
+                found.putAll(lookup.lookup(missing, null));
+            }
+
+            // both lookups succeeded; only now can the known records move forward
+
+            final Map<String, IssueRecord> result = new LinkedHashMap<>();
+            for (final String key : new LinkedHashSet<>(keys)) {
+                final IssueRecord record = found.get(key);
+                if (record == null) continue;
+                write(record, now);
+                result.put(key, record);
+            }
+            return result;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to load JIRA issues " + keys, e);
+        }
+    }
+
+    /**
+     * The cached record for the key, or null
+     */
+    public IssueRecord read(final String key) throws IOException {
+        final Cached cached = readCached(key);
+        return cached != null ? cached.record : null;
+    }
+
+    private static String updatedSince(final long synced, final long now) {
+        final long minutes = TimeUnit.MILLISECONDS.toMinutes(now - synced + MARGIN) + 1;
+        return "updated >= -" + minutes + "m";
+    }
+
+    private File file(final String key) {
+        if (!key.matches("[A-Za-z][A-Za-z0-9_]*-[0-9]+")) throw new IllegalArgumentException("Not an issue key: " + key);
+        return new File(issues, key);
+    }
+
+    private Cached readCached(final String key) throws IOException {
+        final File file = file(key);
+        if (!file.isFile()) return null;
+
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            final long synced = in.readLong();
+            return new Cached(decode(in), synced);
+        } catch (final FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private void write(final IssueRecord record, final long synced) throws IOException {
+        IO.replaceAtomically(file(record.getKey()), stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(VERSION);
+            out.writeLong(synced);
+            encode(record, out);
+            out.flush();
+        });
+    }
+
+    static void encode(final IssueRecord record, final DataOutputStream out) throws IOException {
+        IO.writeString(out, record.getKey());
+        IO.writeString(out, record.getSummary());
+        IO.writeString(out, record.getType());
+        IO.writeString(out, record.getStatus());
+        out.writeLong(record.getUpdated());
+
+        out.writeInt(record.getLabels().size());
+        for (final String label : record.getLabels()) {
+            IO.writeString(out, label);
+        }
+
+        out.writeInt(record.getFixVersions().size());
+        for (final IssueRecord.FixVersion version : record.getFixVersions()) {
+            out.writeLong(version.getId());
+            IO.writeString(out, version.getName());
+            out.writeBoolean(version.isReleased());
+        }
+
+        out.writeInt(record.getLinks().size());
+        for (final IssueRecord.Link link : record.getLinks()) {
+            IO.writeString(out, link.getType());
+            out.writeBoolean(link.isOutbound());
+            IO.writeString(out, link.getTarget());
+        }
+    }
+
+    static IssueRecord decode(final DataInputStream in) throws IOException {
+        final String key = IO.readString(in);
+        final String summary = IO.readString(in);
+        final String type = IO.readString(in);
+        final String status = IO.readString(in);
+        final long updated = in.readLong();
+
+        final List<String> labels = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            labels.add(IO.readString(in));
+        }
+
+        final List<IssueRecord.FixVersion> fixVersions = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            fixVersions.add(new IssueRecord.FixVersion(in.readLong(), IO.readString(in), in.readBoolean()));
+        }
+
+        final List<IssueRecord.Link> links = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            links.add(new IssueRecord.Link(IO.readString(in), in.readBoolean(), IO.readString(in)));
+        }
+
+        return new IssueRecord(key, summary, type, status, updated, labels, fixVersions, links);
+    }
+
+    private static class Cached {
+        private final IssueRecord record;
+        private final long synced;
+
+        private Cached(final IssueRecord record, final long synced) {
+            this.record = record;
+            this.synced = synced;
+        }
+    }
+
+    /**
+     * A query, the keys it matched and when it last ran
+     */
+    private static class Scope {
+        private final String jql;
+        private final long synced;
+        private final Set<String> keys;
+
+        private Scope(final String jql, final long synced, final Set<String> keys) {
+            this.jql = jql;
+            this.synced = synced;
+            this.keys = keys;
+        }
+
+        private static Scope load(final File file) throws IOException {
+            if (!file.isFile()) return null;
+
+            final Properties properties = new Properties();
+            try (final InputStream in = IO.read(file)) {
+                properties.load(in);
+            }
+
+            final Set<String> keys = new LinkedHashSet<>();
+            for (final String key : properties.getProperty("keys", "").split(",")) {
+                if (!key.isEmpty()) keys.add(key);
+            }
+            return new Scope(properties.getProperty("jql"), Long.parseLong(properties.getProperty("synced", "0")), keys);
+        }
+
+        private void store(final File file) throws IOException {
+            final Properties properties = new Properties();
+            properties.setProperty("jql", jql);
+            properties.setProperty("synced", Long.toString(synced));
+            properties.setProperty("keys", String.join(",", keys));
+
+            IO.replaceAtomically(file, out -> properties.store(out, null));
+        }
+    }
+}
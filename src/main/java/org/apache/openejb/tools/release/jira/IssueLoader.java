@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.apache.openejb.tools.release.util.Threads;
+import org.codehaus.swizzle.jira.Issue;
+import org.codehaus.swizzle.jira.Jira;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Loads many issues by key with a few JQL searches rather than one
+ * getIssue call per key.
+ *
+ * Keys are grouped into "key in (...)" searches of batch keys each, run
+ * on a pool of threads.  JIRA rejects the whole search if any key in it
+ * does not exist, so a batch rejected for that reason is split in half
+ * and retried until the keys that cannot be found are isolated and left
+ * out of the result.  Any other failure, such as a refused login or an
+ * unavailable server, is thrown rather than read as missing issues.
+ *
+ * The batch size and pool size come from the release-tools.jira.batch
+ * and release-tools.jira.threads system properties.
+ */
+public class IssueLoader implements IssueCache.Lookup {
+
+    private final Supplier<Jira> jira;
+    private final int batch;
+    private final int threads;
+
+    public IssueLoader(final Jira jira) {
+        this(() -> jira);
+    }
+
+    /**
+     * Logs in through the supplier only when a search is actually needed,
+     * so a lookup answered from the cache never touches JIRA
+     */
+    public IssueLoader(final Supplier<Jira> jira) {
+        this(jira,
+                Integer.getInteger("release-tools.jira.batch", 50),
+                Integer.getInteger("release-tools.jira.threads", 4));
+    }
+
+    public IssueLoader(final Jira jira, final int batch, final int threads) {
+        this(() -> jira, batch, threads);
+    }
+
+    public IssueLoader(final Supplier<Jira> jira, final int batch, final int threads) {
+        if (batch < 1 || threads < 1) throw new IllegalArgumentException("batch and threads must be positive");
+        this.jira = jira;
+        this.batch = batch;
+        this.threads = threads;
+    }
+
+    /**
+     * The issues found, keyed and ordered as the keys given.  Keys that
+     * do not exist are absent.
+     */
+    public Map<String, Issue> load(final Collection<String> keys) {
+        return load(keys, null);
+    }
+
+    /**
+     * As load(keys), keeping only the issues that also match the JQL
+     * condition when one is given
+     */
+    public Map<String, Issue> load(final Collection<String> keys, final String condition) {
+        final List<String> unique = new ArrayList<>(new LinkedHashSet<>(keys));
+        if (unique.isEmpty()) return Collections.emptyMap();
+
+        final List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < unique.size(); i += batch) {
+            batches.add(unique.subList(i, Math.min(unique.size(), i + batch)));
+        }
+
+        final Map<String, Issue> found = new HashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, batches.size()), Threads.daemon("jira"));
+        try {
+            final List<CompletableFuture<List<Issue>>> futures = new ArrayList<>();
+            for (final List<String> keysInBatch : batches) {
+                futures.add(CompletableFuture.supplyAsync(() -> search(keysInBatch, condition), executor));
+            }
+
+            for (final CompletableFuture<List<Issue>> future : futures) {
+                try {
+                    for (final Issue issue : future.join()) {
+                        found.put(issue.getKey(), issue);
+                    }
+                } catch (final CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final Map<String, Issue> issues = new LinkedHashMap<>();
+        for (final String key : unique) {
+            final Issue issue = found.get(key);
+            if (issue != null) issues.put(key, issue);
+        }
+        return issues;
+    }
+
+    @Override
+    public Map<String, IssueRecord> lookup(final Collection<String> keys, final String condition) {
+        final Map<String, IssueRecord> records = new LinkedHashMap<>();
+        for (final Map.Entry<String, Issue> entry : load(keys, condition).entrySet()) {
+            records.put(entry.getKey(), IssueRecord.of(entry.getValue()));
+        }
+        return records;
+    }
+
+    private List<Issue> search(final List<String> keys, final String condition) {
+        try {
+            return bisect(keys, batch -> {
+                final String jql = "key in (" + String.join(", ", batch) + ")" + (condition != null ? " AND " + condition : "");
+                final List<Issue> issues = jira.get().getIssuesFromJqlSearch(jql, batch.size());
+                return issues != null ? issues : Collections.<Issue>emptyList();
+            }, null);
+        } catch (final RuntimeException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to search JIRA for " + keys, e);
+        }
+    }
+
+    /**
+     * A search over some issue keys
+     */
+    interface Batch<T> {
+        List<T> search(List<String> keys) throws Exception;
+    }
+
+    /**
+     * Searches for the keys, splitting the search in half whenever JIRA
+     * rejects it because a key does not exist.  Keys found not to exist
+     * are added to gone, when given.  Other failures are thrown.
+     */
+    static <T> List<T> bisect(final List<String> keys, final Batch<T> batch, final Collection<String> gone) throws Exception {
+        try {
+            return batch.search(keys);
+        } catch (final Exception e) {
+            if (!isMissingIssue(e)) throw e;
+
+            if (keys.size() == 1) {
+                if (gone != null) gone.addAll(keys);
+                return Collections.emptyList();
+            }
+
+            final int half = keys.size() / 2;
+            final List<T> found = new ArrayList<>(bisect(keys.subList(0, half), batch, gone));
+            found.addAll(bisect(keys.subList(half, keys.size()), batch, gone));
+            return found;
+        }
+    }
+
+    /**
+     * True if JIRA refused a search because an issue key in it does not
+     * exist, as in "An issue with key 'TOMEE-1' does not exist for field
+     * 'key'" or "The issue key 'TOMEE-1' for field 'key' is invalid"
+     */
+    static boolean isMissingIssue(final Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            final String message = t.getMessage();
+            if (message == null) continue;
+            if (message.contains("An issue with key '") && message.contains("' does not exist")) return true;
+            if (message.contains("for field 'key' is invalid")) return true;
+        }
+        return false;
+    }
+}
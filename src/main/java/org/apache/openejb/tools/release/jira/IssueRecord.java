@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import com.atlassian.jira.rest.client.api.domain.IssueLink;
+import com.atlassian.jira.rest.client.api.domain.IssueLinkType;
+import org.codehaus.swizzle.jira.Issue;
+import org.codehaus.swizzle.jira.IssueType;
+import org.codehaus.swizzle.jira.Status;
+import org.codehaus.swizzle.jira.Version;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The parts of a JIRA issue the commands use, independent of the client
+ * that fetched it, so one IssueCache can serve the XML-RPC, RSS and REST
+ * clients alike.
+ */
+public class IssueRecord {
+
+    private final String key;
+    private final String summary;
+    private final String type;
+    private final String status;
+    private final long updated;
+    private final List<String> labels;
+    private final List<FixVersion> fixVersions;
+    private final List<Link> links;
+
+    public IssueRecord(final String key, final String summary, final String type, final String status, final long updated,
+                       final List<String> labels, final List<FixVersion> fixVersions, final List<Link> links) {
+        this.key = key;
+        this.summary = summary;
+        this.type = type;
+        this.status = status;
+        this.updated = updated;
+        this.labels = Collections.unmodifiableList(labels);
+        this.fixVersions = Collections.unmodifiableList(fixVersions);
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    /**
+     * From an issue read through the REST client
+     */
+    public static IssueRecord of(final com.atlassian.jira.rest.client.api.domain.Issue issue) {
+        final List<FixVersion> fixVersions = new ArrayList<>();
+        if (issue.getFixVersions() != null) {
+            for (final com.atlassian.jira.rest.client.api.domain.Version version : issue.getFixVersions()) {
+                fixVersions.add(new FixVersion(version.getId() != null ? version.getId() : 0, version.getName(), version.isReleased()));
+            }
+        }
+
+        final List<Link> links = new ArrayList<>();
+        if (issue.getIssueLinks() != null) {
+            for (final IssueLink link : issue.getIssueLinks()) {
+                final IssueLinkType linkType = link.getIssueLinkType();
+                links.add(new Link(linkType.getName(), IssueLinkType.Direction.OUTBOUND.equals(linkType.getDirection()), link.getTargetIssueKey()));
+            }
+        }
+
+        return new IssueRecord(issue.getKey(),
+                issue.getSummary(),
+                issue.getIssueType() != null ? issue.getIssueType().getName() : null,
+                issue.getStatus() != null ? issue.getStatus().getName() : null,
+                issue.getUpdateDate() != null ? issue.getUpdateDate().getMillis() : 0,
+                issue.getLabels() != null ? new ArrayList<>(issue.getLabels()) : Collections.<String>emptyList(),
+                fixVersions,
+                links);
+    }
+
+    /**
+     * From an issue read through XML-RPC or RSS
+     */
+    public static IssueRecord of(final Issue issue) {
+        final List<FixVersion> fixVersions = new ArrayList<>();
+        if (issue.getFixVersions() != null) {
+            for (final Version version : issue.getFixVersions()) {
+                fixVersions.add(new FixVersion(version.getId(), version.getName(), version.getReleased()));
+            }
+        }
+
+        return new IssueRecord(issue.getKey(),
+                issue.getSummary(),
+                issue.getType() != null ? issue.getType().getName() : null,
+                issue.getStatus() != null ? issue.getStatus().getName() : null,
+                issue.getUpdated() != null ? issue.getUpdated().getTime() : 0,
+                Collections.<String>emptyList(),
+                fixVersions,
+                Collections.<Link>emptyList());
+    }
+
+    /**
+     * An XML-RPC style issue holding what this record knows, for code
+     * and templates written against that client
+     */
+    public Issue toIssue() {
+        final Issue issue = new Issue();
+        issue.setKey(key);
+        issue.setSummary(summary);
+
+        if (type != null) {
+            final IssueType issueType = new IssueType();
+            issueType.setName(type);
+            issue.setType(issueType);
+        }
+
+        if (status != null) {
+            final Status issueStatus = new Status();
+            issueStatus.setName(status);
+            issue.setStatus(issueStatus);
+        }
+
+        for (final FixVersion fixVersion : fixVersions) {
+            final Version version = new Version();
+            version.setId((int) fixVersion.getId());
+            version.setName(fixVersion.getName());
+            version.setReleased(fixVersion.isReleased());
+            issue.getFixVersions().add(version);
+        }
+
+        return issue;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * When the issue was last updated, in epoch millis
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public List<FixVersion> getFixVersions() {
+        return fixVersions;
+    }
+
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    @Override
+    public String toString() {
+        return key + " " + summary;
+    }
+
+    public static class FixVersion {
+        private final long id;
+        private final String name;
+        private final boolean released;
+
+        public FixVersion(final long id, final String name, final boolean released) {
+            this.id = id;
+            this.name = name;
+            this.released = released;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isReleased() {
+            return released;
+        }
+    }
+
+    public static class Link {
+        private final String type;
+        private final boolean outbound;
+        private final String target;
+
+        public Link(final String type, final boolean outbound, final String target) {
+            this.type = type;
+            this.outbound = outbound;
+            this.target = target;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isOutbound() {
+            return outbound;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.apache.openejb.tools.release.util.IO;
+import org.apache.openejb.tools.release.util.Threads;
+import org.codehaus.swizzle.jira.IssueType;
+import org.codehaus.swizzle.jira.Jira;
+import org.codehaus.swizzle.jira.Version;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The slow-changing parts of JIRA the commands resolve on startup: issue
+ * types, the versions of each project and issue link types.
+ *
+ * Everything is fetched in one concurrent burst and saved as a properties
+ * file under ~/.release-tools/jira/metadata (release-tools.jira.dir), so
+ * later runs of any command read it from disk until it is older than
+ * release-tools.jira.metadata.hours, 24 by default.  Metadata is saved
+ * under a name per client, so commands using the same client share it.
+ */
+public class JiraMetadata {
+
+    private final long loaded;
+    private final Set<String> projects;
+    private final Map<String, Long> issueTypes;
+    private final Map<String, Map<String, IssueRecord.FixVersion>> versions;
+    private final Set<String> linkTypes;
+
+    private JiraMetadata(final long loaded, final Set<String> projects, final Map<String, Long> issueTypes,
+                         final Map<String, Map<String, IssueRecord.FixVersion>> versions, final Set<String> linkTypes) {
+        this.loaded = loaded;
+        this.projects = projects;
+        this.issueTypes = issueTypes;
+        this.versions = versions;
+        this.linkTypes = linkTypes;
+    }
+
+    /**
+     * Fetches metadata from JIRA.  Only issueTypes is required, for
+     * clients that cannot list the rest.
+     */
+    public interface Source {
+
+        /**
+         * Issue type ids keyed by name
+         */
+        Map<String, Long> issueTypes() throws Exception;
+
+        default List<IssueRecord.FixVersion> versions(final String project) throws Exception {
+            return Collections.emptyList();
+        }
+
+        default Collection<String> linkTypes() throws Exception {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * A source over the XML-RPC client.  The supplier is only called if
+     * the metadata has to be fetched, so a fresh cache avoids logging in.
+     */
+    public static Source of(final Supplier<Jira> jira) {
+        return new Source() {
+            @Override
+            public Map<String, Long> issueTypes() {
+                final Map<String, Long> types = new LinkedHashMap<>();
+                for (final IssueType type : jira.get().getIssueTypes()) {
+                    types.put(type.getName(), (long) type.getId());
+                }
+                return types;
+            }
+
+            @Override
+            public List<IssueRecord.FixVersion> versions(final String project) {
+                final List<IssueRecord.FixVersion> list = new ArrayList<>();
+                for (final Version version : jira.get().getVersions(project)) {
+                    list.add(new IssueRecord.FixVersion(version.getId(), version.getName(), version.getReleased()));
+                }
+                return list;
+            }
+        };
+    }
+
+    /**
+     * A source for clients that can only look issue types up one name at
+     * a time.  The names are resolved concurrently and those the lookup
+     * returns null for are left out.
+     */
+    public static Source of(final Collection<String> names, final Function<String, Long> lookup) {
+        return () -> {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, names.size()), Threads.daemon("jira-metadata"));
+            try {
+                final Map<String, CompletableFuture<Long>> ids = new LinkedHashMap<>();
+                for (final String name : names) {
+                    ids.put(name, CompletableFuture.supplyAsync(() -> lookup.apply(name), executor));
+                }
+
+                final Map<String, Long> types = new LinkedHashMap<>();
+                for (final Map.Entry<String, CompletableFuture<Long>> entry : ids.entrySet()) {
+                    final Long id = join(entry.getValue());
+                    if (id != null) types.put(entry.getKey(), id);
+                }
+                return types;
+            } finally {
+                executor.shutdownNow();
+            }
+        };
+    }
+
+    /**
+     * The named metadata covering the projects, from disk if it is fresh
+     */
+    public static JiraMetadata load(final String name, final Collection<String> projects, final Source source) {
+        final File file = file(name);
+        final long ttl = TimeUnit.HOURS.toMillis(Long.getLong("release-tools.jira.metadata.hours", 24));
+
+        try {
+            final JiraMetadata cached = read(file);
+            if (cached != null
+                    && cached.projects.containsAll(projects)
+                    && System.currentTimeMillis() - cached.loaded < ttl) {
+                return cached;
+            }
+        } catch (final IOException | RuntimeException e) {
+            // unreadable; fetch it again
+        }
+
+        return reload(name, projects, source);
+    }
+
+    /**
+     * Fetches the named metadata regardless of its age, for when a
+     * version or type has been created since it was saved
+     */
+    public static JiraMetadata reload(final String name, final Collection<String> projects, final Source source) {
+        final JiraMetadata metadata = fetch(new LinkedHashSet<>(projects), source);
+        try {
+            metadata.write(file(name));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return metadata;
+    }
+
+    public Map<String, Long> getIssueTypes() {
+        return issueTypes;
+    }
+
+    /**
+     * The id of the named issue type, or null
+     */
+    public Long getIssueType(final String name) {
+        return issueTypes.get(name);
+    }
+
+    public Collection<IssueRecord.FixVersion> getVersions(final String project) {
+        final Map<String, IssueRecord.FixVersion> map = versions.get(project);
+        return map != null ? map.values() : Collections.<IssueRecord.FixVersion>emptyList();
+    }
+
+    /**
+     * The named version of the project, or null
+     */
+    public IssueRecord.FixVersion getVersion(final String project, final String name) {
+        final Map<String, IssueRecord.FixVersion> map = versions.get(project);
+        return map != null ? map.get(name) : null;
+    }
+
+    public Set<String> getLinkTypes() {
+        return linkTypes;
+    }
+
+    /**
+     * When this metadata was fetched from JIRA, in epoch millis
+     */
+    public long getLoaded() {
+        return loaded;
+    }
+
+    private static JiraMetadata fetch(final Set<String> projects, final Source source) {
+        final ExecutorService executor = Executors.newFixedThreadPool(projects.size() + 2, Threads.daemon("jira-metadata"));
+        try {
+            final CompletableFuture<Map<String, Long>> types = async(source::issueTypes, executor);
+            final CompletableFuture<Collection<String>> links = async(source::linkTypes, executor);
+
+            final Map<String, CompletableFuture<List<IssueRecord.FixVersion>>> projectVersions = new LinkedHashMap<>();
+            for (final String project : projects) {
+                projectVersions.put(project, async(() -> source.versions(project), executor));
+            }
+
+            final Map<String, Map<String, IssueRecord.FixVersion>> versions = new LinkedHashMap<>();
+            for (final Map.Entry<String, CompletableFuture<List<IssueRecord.FixVersion>>> entry : projectVersions.entrySet()) {
+                final Map<String, IssueRecord.FixVersion> byName = new LinkedHashMap<>();
+                for (final IssueRecord.FixVersion version : join(entry.getValue())) {
+                    byName.put(version.getName(), version);
+                }
+                versions.put(entry.getKey(), byName);
+            }
+
+            return new JiraMetadata(System.currentTimeMillis(), projects, join(types), versions, new LinkedHashSet<>(join(links)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Call<T> {
+        T call() throws Exception;
+    }
+
+    private static <T> CompletableFuture<T> async(final Call<T> call, final ExecutorService executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (final RuntimeException e) {
+                throw e;
+            } catch (final Exception e) {
+                throw new IllegalStateException("Unable to load JIRA metadata", e);
+            }
+        }, executor);
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static File file(final String name) {
+        final String dir = System.getProperty("release-tools.jira.dir",
+                new File(System.getProperty("user.home"), ".release-tools/jira").getAbsolutePath());
+        return new File(new File(dir, "metadata"), name + ".properties");
+    }
+
+    private static JiraMetadata read(final File file) throws IOException {
+        if (!file.isFile()) return null;
+
+        final Properties properties = new Properties();
+        try (final InputStream in = IO.read(file)) {
+            properties.load(in);
+        }
+
+        final Set<String> projects = new LinkedHashSet<>(list(properties.getProperty("projects")));
+        final Map<String, Long> types = new LinkedHashMap<>();
+        final Map<String, Map<String, IssueRecord.FixVersion>> versions = new LinkedHashMap<>();
+        for (final String project : projects) {
+            versions.put(project, new LinkedHashMap<>());
+        }
+
+        for (final String key : properties.stringPropertyNames()) {
+            final String value = properties.getProperty(key);
+            if (key.startsWith("type.")) {
+                types.put(value, Long.parseLong(key.substring("type.".length())));
+            } else if (key.startsWith("version.")) {
+                // version.<project>.<id>=<released>,<name>
+                final String[] parts = key.split("\\.", 3);
+                final String[] flagAndName = value.split(",", 2);
+                versions.get(parts[1]).put(flagAndName[1],
+                        new IssueRecord.FixVersion(Long.parseLong(parts[2]), flagAndName[1], Boolean.parseBoolean(flagAndName[0])));
+            }
+        }
+
+        return new JiraMetadata(Long.parseLong(properties.getProperty("loaded")), projects, types, versions,
+                new LinkedHashSet<>(list(properties.getProperty("links"))));
+    }
+
+    private void write(final File file) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("loaded", Long.toString(loaded));
+        properties.setProperty("projects", String.join("\n", projects));
+        properties.setProperty("links", String.join("\n", linkTypes));
+
+        for (final Map.Entry<String, Long> type : issueTypes.entrySet()) {
+            properties.setProperty("type." + type.getValue(), type.getKey());
+        }
+
+        for (final Map.Entry<String, Map<String, IssueRecord.FixVersion>> project : versions.entrySet()) {
+            for (final IssueRecord.FixVersion version : project.getValue().values()) {
+                properties.setProperty("version." + project.getKey() + "." + version.getId(), version.isReleased() + "," + version.getName());
+            }
+        }
+
+        IO.replaceAtomically(file, out -> properties.store(out, null));
+    }
+
+    private static List<String> list(final String value) {
+        if (value == null || value.isEmpty()) return Collections.emptyList();
+        return Arrays.asList(value.split("\n"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import com.atlassian.jira.rest.client.api.SearchRestClient;
+import com.atlassian.jira.rest.client.api.domain.Issue;
+import com.atlassian.jira.rest.client.api.domain.SearchResult;
+import org.apache.openejb.tools.release.util.Threads;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs JQL searches through the REST client, fetching every page of the
+ * results rather than only the first.
+ *
+ * The first page of a search reports the total, then the remaining pages
+ * are requested concurrently.  Those pages share one pool of threads
+ * across every search made through an instance, so several queries can
+ * run side by side while no more than threads pages are in flight.  Only
+ * the given fields are requested, which keeps pages small.
+ *
+ * The page size and pool size come from the release-tools.jira.page and
+ * release-tools.jira.threads system properties.
+ */
+public class JqlSearch implements IssueCache.Search, Closeable {
+
+    /**
+     * What IssueRecord reads.  The client needs summary, issuetype,
+     * created, updated, project and status to parse an issue at all.
+     */
+    public static final Set<String> RECORD_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "summary", "issuetype", "created", "updated", "project", "status", "labels", "issuelinks", "fixVersions")));
+
+    private final SearchRestClient client;
+    private final Set<String> fields;
+    private final int page;
+    private final ExecutorService pages;
+    private final ExecutorService queries;
+
+    public JqlSearch(final SearchRestClient client) {
+        this(client, RECORD_FIELDS,
+                Integer.getInteger("release-tools.jira.page", 100),
+                Integer.getInteger("release-tools.jira.threads", 4));
+    }
+
+    public JqlSearch(final SearchRestClient client, final Set<String> fields, final int page, final int threads) {
+        if (page < 1 || threads < 1) throw new IllegalArgumentException("page and threads must be positive");
+        this.client = client;
+        this.fields = fields;
+        this.page = page;
+        this.pages = Executors.newFixedThreadPool(threads, Threads.daemon("jql-page"));
+        this.queries = Executors.newCachedThreadPool(Threads.daemon("jql-query"));
+    }
+
+    /**
+     * Every issue matching the query
+     */
+    @Override
+    public List<IssueRecord> search(final String jql) throws Exception {
+        final SearchResult first = fetch(jql, 0, page);
+        final int size = first.getMaxResults() > 0 ? first.getMaxResults() : page;
+
+        final List<CompletableFuture<SearchResult>> rest = new ArrayList<>();
+        for (int start = size; start < first.getTotal(); start += size) {
+            final int startAt = start;
+            rest.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetch(jql, startAt, size);
+                } catch (final Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, pages));
+        }
+
+        final List<IssueRecord> records = new ArrayList<>(first.getTotal());
+        add(records, first);
+        for (final CompletableFuture<SearchResult> future : rest) {
+            try {
+                add(records, future.join());
+            } catch (final CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Runs the queries through the cache concurrently and merges their
+     * issues by key
+     */
+    public Map<String, IssueRecord> query(final IssueCache cache, final Collection<String> jqls) {
+        final List<CompletableFuture<List<IssueRecord>>> futures = new ArrayList<>();
+        for (final String jql : jqls) {
+            futures.add(CompletableFuture.supplyAsync(() -> cache.query(jql, this), queries));
+        }
+
+        final Map<String, IssueRecord> issues = new LinkedHashMap<>();
+        for (final CompletableFuture<List<IssueRecord>> future : futures) {
+            try {
+                for (final IssueRecord issue : future.join()) {
+                    issues.put(issue.getKey(), issue);
+                }
+            } catch (final CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw e;
+            }
+        }
+        return issues;
+    }
+
+    @Override
+    public void close() {
+        pages.shutdownNow();
+        queries.shutdownNow();
+    }
+
+    private SearchResult fetch(final String jql, final int startAt, final int maxResults) throws InterruptedException, ExecutionException {
+        return client.searchJql(jql, maxResults, startAt, fields).get();
+    }
+
+    private static void add(final List<IssueRecord> records, final SearchResult result) {
+        for (final Issue issue : result.getIssues()) {
+            records.add(IssueRecord.of(issue));
+        }
+    }
+}
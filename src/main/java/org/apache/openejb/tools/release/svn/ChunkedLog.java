@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.Commit;
+import org.apache.openejb.tools.release.CommitReader;
+import org.apache.openejb.tools.release.util.Threads;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads the log of a long revision range as fixed size chunks fetched
+ * concurrently, instead of one svn log stream that must be restarted from
+ * the beginning when it fails.
+ *
+ * At most sessions chunks are in flight, each over its own svn session,
+ * and a failed chunk is retried on its own.  Chunks are handed to the
+ * consumer in revision order as they complete, and no more than twice
+ * sessions chunks are held in memory at a time.
+ *
+ * The defaults come from the release-tools.svn.log.chunk,
+ * release-tools.svn.log.sessions and release-tools.svn.log.attempts
+ * system properties.
+ */
+public class ChunkedLog {
+
+    private final Svn svn;
+    private final long chunk;
+    private final int sessions;
+    private final int attempts;
+
+    public ChunkedLog(final Svn svn) {
+        this(svn,
+                Long.getLong("release-tools.svn.log.chunk", 5000),
+                Integer.getInteger("release-tools.svn.log.sessions", 4),
+                Integer.getInteger("release-tools.svn.log.attempts", 3));
+    }
+
+    public ChunkedLog(final Svn svn, final long chunk, final int sessions, final int attempts) {
+        if (chunk < 1 || sessions < 1 || attempts < 1) {
+            throw new IllegalArgumentException("chunk, sessions and attempts must be positive");
+        }
+        this.svn = svn;
+        this.chunk = chunk;
+        this.sessions = sessions;
+        this.attempts = attempts;
+    }
+
+    /**
+     * Passes every commit to the url from revision from through to,
+     * inclusive, to the consumer in ascending revision order.  The
+     * consumer is always called on the calling thread.
+     */
+    public void read(final String url, final long from, final long to, final boolean verbose, final Consumer<Commit> consumer) {
+        if (from > to) return;
+
+        final long chunks = (to - from) / chunk + 1;
+        if (chunks == 1 || sessions == 1) {
+            for (long start = from; start <= to; start += chunk) {
+                fetch(svn, url, start, Math.min(to, start + chunk - 1), verbose).forEach(consumer);
+            }
+            return;
+        }
+
+        final int threads = (int) Math.min(sessions, chunks);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, Threads.daemon("svn-log"));
+        final BlockingQueue<Svn> pool = new LinkedBlockingQueue<>();
+        final List<Svn> opened = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final Svn session = svn.session();
+            opened.add(session);
+            pool.add(session);
+        }
+
+        final Deque<CompletableFuture<List<Commit>>> pending = new ArrayDeque<>();
+        try {
+            long next = from;
+            while (next <= to || !pending.isEmpty()) {
+                while (next <= to && pending.size() < threads * 2) {
+                    final long start = next;
+                    final long end = Math.min(to, start + chunk - 1);
+                    pending.add(CompletableFuture.supplyAsync(() -> {
+                        final Svn session = take(pool);
+                        try {
+                            return fetch(session, url, start, end, verbose);
+                        } finally {
+                            pool.add(session);
+                        }
+                    }, executor));
+                    next = end + 1;
+                }
+
+                join(pending.remove()).forEach(consumer);
+            }
+        } finally {
+            for (final CompletableFuture<List<Commit>> future : pending) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+            for (final Svn session : opened) {
+                if (session != svn) session.close();
+            }
+        }
+    }
+
+    private List<Commit> fetch(final Svn session, final String url, final long start, final long end, final boolean verbose) {
+        final String revisions = start + ":" + end;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return session.log(url, revisions, verbose, in -> {
+                    try (final CommitReader reader = new CommitReader(in)) {
+                        final List<Commit> commits = new ArrayList<>();
+                        reader.forEachRemaining(commits::add);
+                        return commits;
+                    }
+                });
+            } catch (final SvnException | UncheckedIOException | IllegalStateException e) {
+                if (attempt >= attempts) {
+                    throw new SvnException("Unable to read the log of " + url + " -r" + revisions + " after " + attempt + " attempts", e);
+                }
+                pause(attempt);
+            }
+        }
+    }
+
+    private static Svn take(final BlockingQueue<Svn> pool) {
+        try {
+            return pool.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SvnException("Interrupted waiting for an svn session", e);
+        }
+    }
+
+    private static void pause(final int attempt) {
+        try {
+            TimeUnit.SECONDS.sleep(attempt);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SvnException("Interrupted retrying svn log", e);
+        }
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.Commit;
+import org.apache.openejb.tools.release.util.Digests;
+import org.apache.openejb.tools.release.util.Global;
+import org.apache.openejb.tools.release.util.IO;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Keeps the svn log of each repository url on disk so later runs only ask
+ * svn for the revisions committed since.
+ *
+ * Each url has its own directory holding an append-only commits.dat of
+ * length-prefixed binary records and a commits.idx of (revision, date,
+ * offset) entries sorted by revision.  Queries binary search the index
+ * through a memory mapping and read only the records they return.  A
+ * store.properties file records the range of revisions and the earliest
+ * date known to be complete, and the head revision last seen.
+ *
+ * The log is always fetched with --verbose so one store serves every
+ * command, and long ranges are fetched in concurrent chunks by ChunkedLog.  Stores live in ~/.release-tools/commits unless the
+ * release-tools.commits.dir system property says otherwise.
+ */
+public class CommitStore {
+
+    private static final int ENTRY = 3 * Long.BYTES;
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final Global<CommitStore> GLOBAL = new Global<>(() -> new CommitStore(Global.dir("release-tools.commits.dir", "commits")));
+
+    private final File dir;
+
+    public CommitStore(final File dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir.toPath());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static CommitStore global() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * Brings the log of the url up to date and returns its commits made on
+     * or after the date, oldest first.  Close the stream when done.
+     */
+    public Stream<Commit> since(final Svn svn, final String url, final Date date) {
+        final Log log = log(url);
+        log.update(svn, date, 0);
+        return log.byDate(date, null);
+    }
+
+    /**
+     * Like {@link #since} but returns only the commit dates, read from the
+     * index without decoding a single commit
+     */
+    public LongStream datesSince(final Svn svn, final String url, final Date date) {
+        final Log log = log(url);
+        log.update(svn, date, 0);
+        return log.dates(date, null);
+    }
+
+    /**
+     * Brings the log of the url up to date and returns its commits from the
+     * revision on, oldest first.  Close the stream when done.
+     */
+    public Stream<Commit> from(final Svn svn, final String url, final long revision) {
+        final Log log = log(url);
+        log.update(svn, null, revision);
+        return log.byRevision(revision, Long.MAX_VALUE);
+    }
+
+    /**
+     * Replaces the message of the revision in every stored log holding
+     * it, for when svn:log is changed after the commit was fetched
+     */
+    public void update(final long revision, final String message) {
+        final File[] logs = dir.listFiles(File::isDirectory);
+        if (logs == null) return;
+
+        for (final File logDir : logs) {
+            final String url;
+            try {
+                url = State.url(new File(logDir, "store.properties"));
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (url != null) log(url).update(revision, message);
+        }
+    }
+
+    public Log log(final String url) {
+        final String normalized = url.replaceAll("/+$", "");
+        return new Log(normalized, new File(dir, Digests.hashName(normalized)));
+    }
+
+    /**
+     * The stored log of one url
+     */
+    public static class Log {
+
+        private final String url;
+        private final File dir;
+        private final File data;
+        private final File index;
+        private final File properties;
+
+        private Log(final String url, final File dir) {
+            this.url = url;
+            this.dir = dir;
+            this.data = new File(dir, "commits.dat");
+            this.index = new File(dir, "commits.idx");
+            this.properties = new File(dir, "store.properties");
+        }
+
+        /**
+         * Fetches whatever the store lacks to answer for commits since the
+         * date, or from the revision when the date is null, through the
+         * current head.  The first time this is the whole range, after
+         * that only revisions older than what is stored or newer than the
+         * last head seen.
+         */
+        public void update(final Svn svn, final Date date, final long revision) {
+            try {
+                Files.createDirectories(dir.toPath());
+
+                try (final FileChannel lock = FileChannel.open(new File(dir, "lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                     final FileLock ignored = lock.lock()) {
+
+                    final State state = State.load(properties);
+                    final long head = svn.head(url);
+
+                    final boolean older = state.last < 0
+                            || (date != null ? state.since == NO_DATE || date.getTime() < state.since : revision < state.first);
+
+                    if (older) {
+                        final long from = date != null ? revision(svn, date) : revision;
+                        final long to = state.last < 0 ? head : Math.min(state.first - 1, head);
+                        fetch(svn, from, to);
+                        state.first = Math.min(state.first, from);
+                    }
+
+                    if (state.last >= 0 && head > state.last) {
+                        fetch(svn, state.last + 1, head);
+                    }
+
+                    state.last = Math.max(state.last, head);
+                    if (date != null) state.since = min(state.since, date.getTime());
+
+                    state.store(properties, url);
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Replaces the stored message of the revision, if stored.  The
+         * new record is appended and the index pointed at it.
+         */
+        public void update(final long revision, final String message) {
+            try (final FileChannel lock = FileChannel.open(new File(dir, "lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 final FileLock ignored = lock.lock()) {
+
+                final LongBuffer existing = map();
+                final int entry = find(existing, 0, revision);
+                if (entry < 0) return;
+
+                final Commit commit;
+                try (final RandomAccessFile file = new RandomAccessFile(data, "r")) {
+                    commit = read(file, existing.get(entry * 3 + 2));
+                }
+                commit.setMessage(message);
+
+                final long[] entries = new long[existing.limit()];
+                existing.get(entries);
+
+                try (final FileOutputStream file = new FileOutputStream(data, true)) {
+                    entries[entry * 3 + 2] = file.getChannel().size();
+
+                    final byte[] record = encode(commit);
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+                    out.writeInt(record.length);
+                    out.write(record);
+                    out.flush();
+                    file.getFD().sync();
+                }
+
+                merge(LongBuffer.allocate(0), entries);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Stored commits with revisions in the range, inclusive, oldest first
+         */
+        public Stream<Commit> byRevision(final long from, final long to) {
+            return query(0, from, to);
+        }
+
+        /**
+         * Stored commits made in the range, inclusive, oldest first.  A
+         * null bound is open.
+         */
+        public Stream<Commit> byDate(final Date from, final Date to) {
+            return query(1, from != null ? from.getTime() : Long.MIN_VALUE + 1, to != null ? to.getTime() : Long.MAX_VALUE);
+        }
+
+        /**
+         * The dates of the stored commits made in the range, inclusive,
+         * oldest first.  A null bound is open.
+         */
+        public LongStream dates(final Date from, final Date to) {
+            final LongBuffer entries;
+            try {
+                entries = map();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final long max = to != null ? to.getTime() : Long.MAX_VALUE;
+            return IntStream.range(lowerBound(entries, 1, from != null ? from.getTime() : Long.MIN_VALUE + 1), entries.limit() / 3)
+                    .mapToLong(entry -> entries.get(entry * 3 + 1))
+                    .filter(date -> date != NO_DATE && date <= max);
+        }
+
+        /**
+         * The number of stored commits
+         */
+        public long size() {
+            return index.length() / ENTRY;
+        }
+
+        /**
+         * The revision at the date, or the revision the url was added in if
+         * it did not exist yet.  Starting from revision 1 instead would
+         * mean chunking through all of a large repository's history.
+         */
+        private long revision(final Svn svn, final Date date) {
+            try {
+                return svn.revision(url, date);
+            } catch (final SvnException e) {
+                return svn.first(url);
+            }
+        }
+
+        private void fetch(final Svn svn, final long from, final long to) throws IOException {
+            if (from > to) return;
+
+            final LongBuffer existing = map();
+
+            try (final FileOutputStream file = new FileOutputStream(data, true)) {
+                final Appender appender = new Appender(existing, file);
+                new ChunkedLog(svn).read(url, from, to, true, appender);
+                appender.flush();
+                file.getFD().sync();
+
+                if (appender.count > 0) merge(existing, Arrays.copyOf(appender.entries, appender.count));
+            }
+        }
+
+        /**
+         * Writes a new index holding the existing and added entries sorted
+         * by revision, then swaps it in
+         */
+        private void merge(final LongBuffer existing, final long[] added) throws IOException {
+            final int size = existing.limit() + added.length;
+            final long[][] all = new long[size / 3][];
+            int n = 0;
+            for (int i = 0; i < existing.limit(); i += 3) {
+                all[n++] = new long[]{existing.get(i), existing.get(i + 1), existing.get(i + 2)};
+            }
+            for (int i = 0; i < added.length; i += 3) {
+                all[n++] = new long[]{added[i], added[i + 1], added[i + 2]};
+            }
+            Arrays.sort(all, (a, b) -> Long.compare(a[0], b[0]));
+
+            IO.replaceAtomically(index, stream -> {
+                final DataOutputStream out = new DataOutputStream(stream);
+                for (final long[] entry : all) {
+                    out.writeLong(entry[0]);
+                    out.writeLong(entry[1]);
+                    out.writeLong(entry[2]);
+                }
+                out.flush();
+            });
+        }
+
+        private Stream<Commit> query(final int field, final long from, final long to) {
+            final LongBuffer entries;
+            final RandomAccessFile file;
+            try {
+                entries = map();
+                file = entries.limit() > 0 ? new RandomAccessFile(data, "r") : null;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final int start = lowerBound(entries, field, from);
+            final LongPredicate inRange = value -> value <= to;
+
+            final Spliterator<Commit> spliterator = new Spliterators.AbstractSpliterator<Commit>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                private int i = start;
+
+                @Override
+                public boolean tryAdvance(final Consumer<? super Commit> action) {
+                    while (i < entries.limit() / 3) {
+                        final int entry = i++;
+                        final long value = entries.get(entry * 3 + field);
+                        if (field == 1 && value == NO_DATE) continue;
+                        if (!inRange.test(value)) {
+                            if (field == 0) i = Integer.MAX_VALUE;
+                            continue;
+                        }
+
+                        action.accept(read(file, entries.get(entry * 3 + 2)));
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+            return StreamSupport.stream(spliterator, false).onClose(() -> {
+                if (file == null) return;
+                try {
+                    file.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+            });
+        }
+
+        private LongBuffer map() throws IOException {
+            if (!index.isFile() || index.length() == 0) return LongBuffer.allocate(0);
+
+            try (final FileChannel channel = FileChannel.open(index.toPath(), StandardOpenOption.READ)) {
+                final long length = channel.size() - channel.size() % ENTRY;
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, length).asLongBuffer();
+            }
+        }
+
+        private static Commit read(final RandomAccessFile file, final long offset) {
+            try {
+                final FileChannel channel = file.getChannel();
+                final ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                readFully(channel, length, offset);
+
+                final ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+                readFully(channel, record, offset + Integer.BYTES);
+
+                return decode(record.array());
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("commits.dat is truncated");
+                }
+            }
+        }
+    }
+
+    /**
+     * Binary search for the revision, returning its entry or -1
+     */
+    private static int find(final LongBuffer entries, final int field, final long value) {
+        final int i = lowerBound(entries, field, value);
+        return i < entries.limit() / 3 && entries.get(i * 3 + field) == value ? i : -1;
+    }
+
+    /**
+     * The first entry whose field is at least the value.  Dates follow
+     * revisions, so the date field is searched the same way.
+     */
+    private static int lowerBound(final LongBuffer entries, final int field, final long value) {
+        int low = 0;
+        int high = entries.limit() / 3;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (entries.get(mid * 3 + field) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static byte[] encode(final Commit commit) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(commit.getRevision());
+        out.writeLong(commit.getDate() != null ? commit.getDate().getTime() : NO_DATE);
+        IO.writeString(out, commit.getAuthor());
+        IO.writeString(out, commit.getMessage());
+        out.writeInt(commit.getPaths().size());
+        for (final Commit.Path path : commit.getPaths()) {
+            IO.writeString(out, path.getKind());
+            IO.writeString(out, path.getAction());
+            IO.writeString(out, path.getPath());
+        }
+        return bytes.toByteArray();
+    }
+
+    static Commit decode(final byte[] record) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final Commit commit = new Commit();
+        commit.setRevision(in.readLong());
+        final long date = in.readLong();
+        commit.setDate(date != NO_DATE ? new Date(date) : null);
+        commit.setAuthor(IO.readString(in));
+        commit.setMessage(IO.readString(in));
+        final int paths = in.readInt();
+        for (int i = 0; i < paths; i++) {
+            final Commit.Path path = new Commit.Path();
+            path.setKind(IO.readString(in));
+            path.setAction(IO.readString(in));
+            path.setPath(IO.readString(in));
+            commit.getPaths().add(path);
+        }
+        return commit;
+    }
+
+    private static long min(final long a, final long b) {
+        if (a == NO_DATE) return b;
+        if (b == NO_DATE) return a;
+        return Math.min(a, b);
+    }
+
+    /**
+     * Writes the commits not yet stored to the end of commits.dat and
+     * collects their index entries
+     */
+    private static class Appender implements Consumer<Commit> {
+        private final LongBuffer existing;
+        private final DataOutputStream out;
+        private long offset;
+        private long[] entries = new long[3 * 1024];
+        private int count;
+
+        private Appender(final LongBuffer existing, final FileOutputStream file) throws IOException {
+            this.existing = existing;
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            this.offset = file.getChannel().size();
+        }
+
+        @Override
+        public void accept(final Commit commit) {
+            if (find(existing, 0, commit.getRevision()) >= 0) return;
+
+            final byte[] record;
+            try {
+                record = encode(commit);
+                out.writeInt(record.length);
+                out.write(record);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            if (count + 3 > entries.length) entries = Arrays.copyOf(entries, entries.length * 2);
+            entries[count++] = commit.getRevision();
+            entries[count++] = commit.getDate() != null ? commit.getDate().getTime() : NO_DATE;
+            entries[count++] = offset;
+            offset += Integer.BYTES + record.length;
+        }
+
+        private void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * What the store knows is complete: every commit from revision first
+     * through last, and every commit made since the date since
+     */
+    private static class State {
+        private long first = Long.MAX_VALUE;
+        private long last = -1;
+        private long since = NO_DATE;
+
+        private static String url(final File file) throws IOException {
+            if (!file.isFile()) return null;
+
+            final Properties properties = new Properties();
+            try (final InputStream in = IO.read(file)) {
+                properties.load(in);
+            }
+            return properties.getProperty("url");
+        }
+
+        private static State load(final File file) throws IOException {
+            final State state = new State();
+            if (!file.isFile()) return state;
+
+            final Properties properties = new Properties();
+            try (final InputStream in = IO.read(file)) {
+                properties.load(in);
+            }
+            state.first = Long.parseLong(properties.getProperty("first", Long.toString(Long.MAX_VALUE)));
+            state.last = Long.parseLong(properties.getProperty("last", "-1"));
+            state.since = Long.parseLong(properties.getProperty("since", Long.toString(NO_DATE)));
+            return state;
+        }
+
+        private void store(final File file, final String url) throws IOException {
+            final Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("first", Long.toString(first));
+            properties.setProperty("last", Long.toString(last));
+            properties.setProperty("since", Long.toString(since));
+
+            IO.replaceAtomically(file, out -> properties.store(out, null));
+        }
+    }
+}
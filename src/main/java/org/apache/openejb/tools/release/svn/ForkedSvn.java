@@ -0,0 +1,420 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.util.Exec;
+import org.apache.openejb.tools.release.util.StreamConsumer;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the svn command line client, with as few processes as possible.
+ * Processes are started through {@link Exec}, so concurrent callers such as
+ * ChunkedLog share its limit on running processes and its output pumps.
+ *
+ * Files are handed to svn through a --targets file rather than the command
+ * line, so any number of them fit in a single invocation.  The output is
+ * parsed back into a result per file.  Every process started through an
+ * instance is counted and timed so callers can report what svn cost them.
+ *
+ * Transactions are sent as one svnmucc invocation.
+ */
+public class ForkedSvn implements Svn {
+
+    public static final String NAME = "fork";
+
+    private static final Pattern ADDED = Pattern.compile("^A\\s+(?:\\(bin\\)\\s+)?(.+)$");
+    private static final Pattern REVISION = Pattern.compile("revision=\"([0-9]+)\"");
+    private static final Pattern WARNING = Pattern.compile("^svn: (?:warning: )?([EW]\\d+): '([^']+)'(.*)$");
+
+    private final PrintStream out;
+    private final AtomicInteger processes = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+
+    public ForkedSvn(final PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public boolean exists(final String url) {
+        return run("svn", Collections.emptyList(), false, "info", "--depth", "empty", url).exit == 0;
+    }
+
+    @Override
+    public long head(final String url) {
+        return revision(url, "HEAD");
+    }
+
+    @Override
+    public long revision(final String url, final Date date) {
+        return revision(url, "{" + date.toInstant() + "}");
+    }
+
+    /**
+     * Asks for a single log entry rather than reading the whole history
+     */
+    @Override
+    public long first(final String url) {
+        final String log = String.join("\n", check(run("svn", Collections.emptyList(), false,
+                "log", "--xml", "--quiet", "-l", "1", "-r", "1:HEAD", url), "log " + url).stdout);
+        final Matcher matcher = REVISION.matcher(log);
+        if (!matcher.find()) throw new SvnException("No history for " + url);
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private long revision(final String url, final String at) {
+        final String revision = String.join("", check(run("svn", Collections.emptyList(), false,
+                "info", "--show-item", "revision", "-r", at, url), "info " + url).stdout).trim();
+        try {
+            return Long.parseLong(revision);
+        } catch (final NumberFormatException e) {
+            throw new SvnException("Unexpected revision '" + revision + "' for " + url);
+        }
+    }
+
+    @Override
+    public List<String> list(final String url) {
+        final List<String> entries = new ArrayList<>();
+        for (final String line : check(run("svn", Collections.emptyList(), false, "list", url), "list " + url).stdout) {
+            if (!line.trim().isEmpty()) entries.add(line.trim());
+        }
+        return entries;
+    }
+
+    @Override
+    public void mkdir(final String message, final Collection<String> urls) {
+        if (urls.isEmpty()) return;
+
+        final List<String> args = new ArrayList<>(Arrays.asList("-m", message, "mkdir", "--parents"));
+        args.addAll(urls);
+        call("mkdir " + urls, args.toArray(new String[0]));
+    }
+
+    @Override
+    public void copy(final String message, final String from, final String to) {
+        call("copy " + from, "-m", message, "cp", from, to);
+    }
+
+    @Override
+    public void delete(final String message, final String url) {
+        call("delete " + url, "-m", message, "rm", url);
+    }
+
+    @Override
+    public void checkout(final String url, final File dir, final Depth depth) {
+        call("checkout " + url, "checkout", "--depth", depth.getName(), url, dir.getAbsolutePath());
+    }
+
+    @Override
+    public void update(final Collection<File> paths, final Depth depth) {
+        if (paths.isEmpty()) return;
+
+        check(run("svn", paths, true, "update", "--set-depth", depth.getName()), "update " + paths);
+    }
+
+    /**
+     * Schedules all files for addition in one svn process
+     */
+    @Override
+    public List<Result> add(final Collection<File> files) {
+        if (files.isEmpty()) return Collections.emptyList();
+
+        final Map<String, Result> results = new LinkedHashMap<>();
+        for (final File file : files) {
+            results.put(file.getAbsolutePath(), new Result(file, Status.UNCHANGED, null));
+        }
+
+        final Output output = run("svn", files, true, "add", "--parents");
+
+        for (final String line : output.stdout) {
+            final Matcher matcher = ADDED.matcher(line.trim());
+            if (!matcher.matches()) continue;
+
+            final String path = new File(matcher.group(1).trim()).getAbsolutePath();
+            final Result result = results.get(path);
+            if (result != null) {
+                results.put(path, new Result(result.getFile(), Status.ADDED, null));
+            }
+        }
+
+        for (final String line : output.stderr) {
+            final Matcher matcher = WARNING.matcher(line.trim());
+            if (!matcher.matches()) continue;
+
+            final String path = new File(matcher.group(2)).getAbsolutePath();
+            final Result result = results.get(path);
+            if (result == null) continue;
+
+            // W150002: already under version control
+            final Status status = "W150002".equals(matcher.group(1)) ? Status.VERSIONED : Status.FAILED;
+            results.put(path, new Result(result.getFile(), status, matcher.group(1) + matcher.group(3)));
+        }
+
+        if (output.exit != 0) {
+            results.replaceAll((path, result) -> result.getStatus() != Status.UNCHANGED ? result
+                    : new Result(result.getFile(), Status.FAILED, "svn exited with " + output.exit));
+        }
+
+        return new ArrayList<>(results.values());
+    }
+
+    @Override
+    public void commit(final String message, final File... paths) {
+        check(run("svn", Arrays.asList(paths), true, "commit", "-m", message), "commit " + Arrays.toString(paths));
+    }
+
+    /**
+     * Actions are passed through an svnmucc --extra-args file so there is
+     * no limit on how many there are
+     */
+    @Override
+    public void transaction(final String message, final String root, final List<String> actions) {
+        final File extraArgs;
+        try {
+            extraArgs = File.createTempFile("svnmucc-args", ".txt");
+            Files.write(extraArgs.toPath(), actions, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            check(run("svnmucc", Collections.emptyList(), true, "-m", message, "-U", root, "-X", extraArgs.getAbsolutePath()),
+                    "svnmucc " + root);
+        } finally {
+            extraArgs.delete();
+        }
+    }
+
+    /**
+     * Streams the output of svn log as it is produced.  The exit code is
+     * checked once the end of the stream is reached.
+     */
+    @Override
+    public InputStream log(final String url, final String revisions, final boolean verbose) {
+        final long start = System.nanoTime();
+        processes.incrementAndGet();
+
+        final InputStream in;
+        try {
+            in = call("svn", logArgs(url, revisions, verbose)).error(System.err).check().read();
+        } catch (final RuntimeException e) {
+            nanos.addAndGet(System.nanoTime() - start);
+            throw new SvnException("Unable to run svn log " + url, e);
+        }
+
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    nanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    /**
+     * Parses the log as svn produces it, failing if svn exits with an error
+     */
+    @Override
+    public <T> T log(final String url, final String revisions, final boolean verbose, final StreamConsumer<T> consumer) {
+        final long start = System.nanoTime();
+        processes.incrementAndGet();
+        try {
+            return Exec.join(call("svn", logArgs(url, revisions, verbose)).error(System.err).stream(consumer));
+        } catch (final SvnException e) {
+            throw e;
+        } catch (final RuntimeException e) {
+            throw new SvnException("Unable to read the log of " + url, e);
+        } finally {
+            nanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private static List<String> logArgs(final String url, final String revisions, final boolean verbose) {
+        final List<String> args = new ArrayList<>(Arrays.asList("log", "--xml", "-r" + revisions));
+        if (verbose) args.add("--verbose");
+        args.add(url);
+        return args;
+    }
+
+    @Override
+    public void setRevisionProperty(final String url, final long revision, final String name, final String value) {
+        call("propset " + name + " r" + revision, "propset", "-r", revision + "", "--revprop", name, value, url);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Runs any svn command, echoing its output, and returns the exit code
+     */
+    public int exec(final String... args) {
+        return run("svn", Collections.emptyList(), true, args).exit;
+    }
+
+    /**
+     * Runs an svn command quietly and returns what it printed
+     */
+    public String read(final String... args) {
+        return String.join("\n", run("svn", Collections.emptyList(), false, args).stdout);
+    }
+
+    public int getProcesses() {
+        return processes.get();
+    }
+
+    public long getMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("svn: %s processes in %s ms", getProcesses(), getMillis());
+    }
+
+    private void call(final String description, final String... args) {
+        check(run("svn", Collections.emptyList(), true, args), description);
+    }
+
+    private static Output check(final Output output, final String description) {
+        if (output.exit != 0) {
+            throw new SvnException(String.format("svn %s failed with exit code %s%s", description, output.exit,
+                    output.stderr.isEmpty() ? "" : ": " + String.join(" ", output.stderr)));
+        }
+        return output;
+    }
+
+    /**
+     * Processes go through Exec, so they count against its limit on
+     * concurrent processes, but keep the PATH svn was found on
+     */
+    private static Exec.Call call(final String program, final List<String> args) {
+        final Exec.Call call = Exec.call(program, args.toArray(new String[0]));
+        final String path = System.getenv("PATH");
+        if (path != null && !Exec.env.containsKey("PATH")) call.env("PATH", path);
+        return call;
+    }
+
+    private Output run(final String program, final Collection<File> targets, final boolean echo, final String... args) {
+        final List<String> command = new ArrayList<>(Arrays.asList(args));
+
+        File targetsFile = null;
+        final long start = System.nanoTime();
+        try {
+            if (!targets.isEmpty()) {
+                targetsFile = File.createTempFile("svn-targets", ".txt");
+                final StringBuilder paths = new StringBuilder();
+                for (final File target : targets) {
+                    paths.append(target.getAbsolutePath()).append('\n');
+                }
+                Files.write(targetsFile.toPath(), paths.toString().getBytes(StandardCharsets.UTF_8));
+                command.add("--targets");
+                command.add(targetsFile.getAbsolutePath());
+            }
+
+            final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+            final OutputStream output = !echo ? stdout : new OutputStream() {
+                @Override
+                public void write(final int b) {
+                    stdout.write(b);
+                    out.write(b);
+                }
+
+                @Override
+                public void write(final byte[] b, final int off, final int len) {
+                    stdout.write(b, off, len);
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void flush() {
+                    out.flush();
+                }
+            };
+
+            processes.incrementAndGet();
+            final Exec.Result result = Exec.join(call(program, command).output(output).start());
+
+            // probes such as exists() expect to fail; check() reports stderr when a failure is not expected
+            final List<String> stderr = lines(result.getError());
+            if (echo) stderr.forEach(out::println);
+
+            return new Output(result.getExitCode(), lines(new String(stdout.toByteArray(), StandardCharsets.UTF_8)), stderr);
+        } catch (final IOException e) {
+            throw new SvnException("Unable to run " + program + " " + command, e);
+        } catch (final SvnException e) {
+            throw e;
+        } catch (final RuntimeException e) {
+            throw new SvnException("Unable to run " + program + " " + command, e);
+        } finally {
+            nanos.addAndGet(System.nanoTime() - start);
+            if (targetsFile != null) targetsFile.delete();
+        }
+    }
+
+    private static List<String> lines(final String text) {
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    private static class Output {
+        private final int exit;
+        private final List<String> stdout;
+        private final List<String> stderr;
+
+        private Output(final int exit, final List<String> stdout, final List<String> stderr) {
+            this.exit = exit;
+            this.stdout = stdout;
+            this.stderr = stderr;
+        }
+    }
+}
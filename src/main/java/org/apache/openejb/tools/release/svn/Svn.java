@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.util.StreamConsumer;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Everything the release commands ask of Subversion.
+ *
+ * A backend is chosen once per command with {@link #open}.  Backends are
+ * discovered with {@link ServiceLoader} as {@link Backend} implementations,
+ * so one that talks to the repository in-process and keeps its sessions
+ * open between calls is used as soon as it is on the classpath.  The
+ * system property release-tools.svn picks a backend by name, and "fork"
+ * always selects {@link ForkedSvn}, which runs the svn command line client
+ * and is the fallback when nothing else is installed.
+ *
+ * Urls are passed as strings exactly as svn accepts them.  Failures are
+ * reported with {@link SvnException}.
+ */
+public interface Svn extends Closeable {
+
+    String BACKEND_PROPERTY = "release-tools.svn";
+
+    static Svn open(final PrintStream out) {
+        final String name = System.getProperty(BACKEND_PROPERTY);
+        if (ForkedSvn.NAME.equals(name)) return new ForkedSvn(out);
+
+        for (final Backend backend : ServiceLoader.load(Backend.class)) {
+            if (name == null || name.equals(backend.getName())) {
+                return backend.open(out);
+            }
+        }
+
+        if (name != null) {
+            throw new IllegalArgumentException("No svn backend named " + name);
+        }
+
+        return new ForkedSvn(out);
+    }
+
+    /**
+     * True if the url exists in the repository
+     */
+    boolean exists(String url);
+
+    /**
+     * The youngest revision of the repository the url belongs to
+     */
+    long head(String url);
+
+    /**
+     * The youngest revision of the repository at the date
+     */
+    long revision(String url, Date date);
+
+    /**
+     * The oldest revision in the history of the url, where it was first
+     * added.  The default reads the first entry of its log.
+     */
+    default long first(final String url) {
+        return log(url, "1:HEAD", false, in -> {
+            final Matcher matcher = Pattern.compile("revision=\"([0-9]+)\"").matcher("");
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (matcher.reset(line).find()) return Long.parseLong(matcher.group(1));
+            }
+            throw new SvnException("No history for " + url);
+        });
+    }
+
+    /**
+     * The entries directly under the url as svn list prints them, with a
+     * trailing slash on directories
+     */
+    List<String> list(String url);
+
+    /**
+     * Creates the directories and any missing parents in one revision
+     */
+    void mkdir(String message, Collection<String> urls);
+
+    void copy(String message, String from, String to);
+
+    void delete(String message, String url);
+
+    void checkout(String url, File dir, Depth depth);
+
+    /**
+     * Updates the working copy paths, setting them to the given depth
+     */
+    void update(Collection<File> paths, Depth depth);
+
+    /**
+     * Schedules the files for addition, creating parents as needed, and
+     * reports what happened to each one
+     */
+    List<Result> add(Collection<File> files);
+
+    void commit(String message, File... paths);
+
+    /**
+     * Commits all actions as a single revision without a working copy.
+     * Actions use the svnmucc vocabulary relative to the root url, for
+     * example "mkdir", "staging-1/tomee-8.0.7", "put", "/tmp/a.zip",
+     * "staging-1/tomee-8.0.7/a.zip" or "mv", "dev/a", "release/a".
+     */
+    void transaction(String message, String root, List<String> actions);
+
+    /**
+     * The log of the url in the format of svn log --xml.  Revisions are
+     * given as to -r, for example "HEAD:{2012-06-01}" or "1417791:HEAD".
+     */
+    InputStream log(String url, String revisions, boolean verbose);
+
+    /**
+     * Hands the log to the consumer as it is read, so it is never held in
+     * memory as a whole
+     */
+    default <T> T log(final String url, final String revisions, final boolean verbose, final StreamConsumer<T> consumer) {
+        try (final InputStream in = log(url, revisions, verbose)) {
+            return consumer.consume(in);
+        } catch (final IOException e) {
+            throw new SvnException("Unable to read the log of " + url, e);
+        }
+    }
+
+    void setRevisionProperty(String url, long revision, String name, String value);
+
+    /**
+     * A session that may be used from another thread alongside this one.
+     * The default shares this instance, which suits backends that keep no
+     * connection state.  Backends holding a connection should open a new
+     * one, which the caller closes when done.
+     */
+    default Svn session() {
+        return this;
+    }
+
+    @Override
+    void close();
+
+    enum Depth {
+        EMPTY,
+        FILES,
+        IMMEDIATES,
+        INFINITY;
+
+        public String getName() {
+            return name().toLowerCase();
+        }
+    }
+
+    enum Status {
+        ADDED,
+        VERSIONED,
+        UNCHANGED,
+        FAILED
+    }
+
+    class Result {
+        private final File file;
+        private final Status status;
+        private final String message;
+
+        public Result(final File file, final Status status, final String message) {
+            this.file = file;
+            this.status = status;
+            this.message = message;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return status + " " + file.getName() + (message != null ? " " + message : "");
+        }
+    }
+
+    /**
+     * An svn implementation registered in
+     * META-INF/services/org.apache.openejb.tools.release.svn.Svn$Backend
+     */
+    interface Backend {
+
+        String getName();
+
+        Svn open(PrintStream out);
+    }
+}
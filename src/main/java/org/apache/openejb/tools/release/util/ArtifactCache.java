@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A content-addressed store for downloaded artifacts shared by every
+ * command and every process on the machine.
+ *
+ * Files are stored once under objects/ by their SHA-1 and an index/ maps
+ * repository coordinates (host plus path) to that SHA-1.  When the SHA-1
+ * of the wanted file is known up front, as it is from a .sha1 sidecar,
+ * the same bytes are found no matter which repository or staging repo
+ * they were first fetched from.
+ *
+ * Every insert is written to tmp/ and renamed into place, so readers never
+ * see a partial object and concurrent inserts of the same content are
+ * harmless.  Reads touch a stamp file under used/ rather than the object
+ * itself, as an object may be a hard link to a file outside the cache
+ * whose modification time must not change.  Eviction uses the stamps to
+ * drop the least recently used objects once the cache grows past its
+ * size bound.
+ *
+ * The location defaults to ~/.release-tools/cache and the bound to 8 GB;
+ * both can be changed with the release-tools.cache.dir and
+ * release-tools.cache.size system properties.
+ */
+public class ArtifactCache {
+
+    private static final long GRACE = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Global<ArtifactCache> GLOBAL = new Global<>(() -> new ArtifactCache(
+            Global.dir("release-tools.cache.dir", "cache"), Long.getLong("release-tools.cache.size", 8L * 1024 * 1024 * 1024)));
+
+    private final File objects;
+    private final File used;
+    private final File index;
+    private final File tmp;
+    private final File lock;
+    private final long maxSize;
+
+    public ArtifactCache(final File root, final long maxSize) {
+        this.objects = new File(root, "objects");
+        this.used = new File(root, "used");
+        this.index = new File(root, "index");
+        this.tmp = new File(root, "tmp");
+        this.lock = new File(root, ".lock");
+        this.maxSize = maxSize;
+
+        mkdirs(objects);
+        mkdirs(used);
+        mkdirs(index);
+        mkdirs(tmp);
+    }
+
+    /**
+     * The cache shared by all commands
+     */
+    public static ArtifactCache global() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * Downloads a file into the cache unless it is already present.
+     */
+    public interface Fetch {
+        void to(File file) throws IOException;
+    }
+
+    /**
+     * Returns the cached object for the given coordinates, fetching it if
+     * needed.  If the sha1 is known any object with that content is reused,
+     * otherwise the object previously stored under the key is.  A fetched
+     * file that does not match the sha1 is discarded with an IOException.
+     *
+     * The returned file is shared and must not be modified; use
+     * {@link #copy(File, File)} to get a private copy.
+     */
+    public File resolve(final String key, final String sha1, final Fetch fetch) throws IOException {
+        final File cached = sha1 != null ? get(sha1) : lookup(key);
+        if (cached != null) {
+            index(key, cached.getName());
+            return cached;
+        }
+
+        final File download = temp();
+        try {
+            fetch.to(download);
+
+            final String actual = Digests.digest(download, Digests.SHA1).get(Digests.SHA1);
+            if (sha1 != null && !actual.equals(normalize(sha1))) {
+                throw new IOException(String.format("Checksum mismatch for %s: expected %s, got %s", key, normalize(sha1), actual));
+            }
+
+            return insert(key, actual, download);
+        } finally {
+            download.delete();
+        }
+    }
+
+    /**
+     * Returns the object with this sha1 or null if it is not cached
+     */
+    public File get(final String sha1) {
+        if (sha1 == null) return null;
+
+        final File object = object(normalize(sha1));
+        if (!object.isFile()) return null;
+
+        touch(object.getName());
+        return object;
+    }
+
+    /**
+     * Returns the object last stored under the key or null
+     */
+    public File lookup(final String key) throws IOException {
+        final File entry = entry(key);
+        if (!entry.isFile()) return null;
+
+        return get(IO.slurp(entry).trim());
+    }
+
+    /**
+     * Adds the file under the key.  The sha1 is computed if null.  The
+     * object is a hard link to the file when both are on the same file
+     * system and a copy otherwise, so the file must not be modified in
+     * place afterwards.
+     */
+    public File put(final String key, final File file, final String sha1) throws IOException {
+        final String hash = sha1 != null ? normalize(sha1) : Digests.digest(file, Digests.SHA1).get(Digests.SHA1);
+
+        final File existing = get(hash);
+        if (existing != null) {
+            index(key, hash);
+            return existing;
+        }
+
+        final File copy = temp();
+        try {
+            try {
+                Files.createLink(copy.toPath(), file.toPath());
+            } catch (final IOException | UnsupportedOperationException e) {
+                // another file system, or one without hard links
+                Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return insert(key, hash, copy);
+        } finally {
+            copy.delete();
+        }
+    }
+
+    /**
+     * Atomically replaces the target with a copy of a cached object
+     */
+    public void copy(final File object, final File target) throws IOException {
+        final File part = new File(target.getParentFile(), target.getName() + ".part");
+        Files.copy(object.toPath(), part.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        IO.replaceAtomically(part, target);
+    }
+
+    /**
+     * Removes the least recently used objects until the cache fits its size
+     * bound.  Objects used within the last minute are kept so files handed
+     * out to a running command are not pulled from under it.  Only one
+     * process evicts at a time; others return immediately.
+     */
+    public void evict() throws IOException {
+        try (final FileChannel channel = FileChannel.open(lock.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            final FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (final OverlappingFileLockException e) {
+                return;
+            }
+            if (fileLock == null) return;
+
+            try {
+                final List<File> all = new ArrayList<>();
+                final Map<File, Long> lastUsed = new HashMap<>();
+                long total = 0;
+                final File[] dirs = objects.listFiles();
+                if (dirs != null) {
+                    for (final File dir : dirs) {
+                        final File[] files = dir.listFiles();
+                        if (files == null) continue;
+                        for (final File file : files) {
+                            all.add(file);
+                            lastUsed.put(file, lastUsed(file));
+                            total += file.length();
+                        }
+                    }
+                }
+
+                if (total <= maxSize) return;
+
+                all.sort(Comparator.comparingLong(lastUsed::get));
+
+                final long cutoff = System.currentTimeMillis() - GRACE;
+                for (final File file : all) {
+                    if (total <= maxSize) break;
+                    if (lastUsed.get(file) > cutoff) break;
+
+                    final long length = file.length();
+                    if (file.delete()) {
+                        total -= length;
+                        stamp(file.getName()).delete();
+                    }
+                }
+            } finally {
+                fileLock.release();
+            }
+        }
+    }
+
+    private File insert(final String key, final String sha1, final File file) throws IOException {
+        final File object = object(sha1);
+        mkdirs(object.getParentFile());
+        IO.replaceAtomically(file, object);
+        touch(sha1);
+        index(key, sha1);
+        evict();
+        return object;
+    }
+
+    private void index(final String key, final String sha1) throws IOException {
+        final File entry = entry(key);
+        if (entry.isFile() && sha1.equals(IO.slurp(entry).trim())) return;
+
+        mkdirs(entry.getParentFile());
+        final File part = temp();
+        IO.writeString(part, sha1);
+        IO.replaceAtomically(part, entry);
+    }
+
+    private File object(final String sha1) {
+        return new File(new File(objects, sha1.substring(0, 2)), sha1);
+    }
+
+    /**
+     * The file whose modification time records when the object was last used
+     */
+    File stamp(final String sha1) {
+        return new File(new File(used, sha1.substring(0, 2)), sha1);
+    }
+
+    private void touch(final String sha1) {
+        final File stamp = stamp(sha1);
+        if (stamp.setLastModified(System.currentTimeMillis())) return;
+
+        try {
+            mkdirs(stamp.getParentFile());
+            Files.write(stamp.toPath(), new byte[0]);
+        } catch (final IOException | UncheckedIOException e) {
+            // recency only orders eviction, a missing stamp falls back to the object's own time
+        }
+    }
+
+    private long lastUsed(final File object) {
+        final File stamp = stamp(object.getName());
+        return stamp.isFile() ? stamp.lastModified() : object.lastModified();
+    }
+
+    private File entry(final String key) {
+        final String path = key.replaceAll("[^A-Za-z0-9._/-]", "_").replaceAll("\\.\\.+", "_");
+        return new File(index, path);
+    }
+
+    private File temp() {
+        return new File(tmp, UUID.randomUUID().toString());
+    }
+
+    /**
+     * The index key of a remote file: its host and path
+     */
+    public static String key(final URI uri) {
+        return uri.getAuthority() + uri.getPath();
+    }
+
+    /**
+     * Sha1 files come as either the bare hash or "hash  filename"
+     */
+    public static String normalize(final String sha1) {
+        return sha1.trim().split("\\s+")[0].toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads the hash out of a .sha1 file
+     */
+    public static String sha1(final InputStream in) throws IOException {
+        final String content = IO.slurp(in);
+        return content.trim().isEmpty() ? null : normalize(content);
+    }
+
+    private static void mkdirs(final File dir) {
+        try {
+            Files.createDirectories(dir.toPath());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
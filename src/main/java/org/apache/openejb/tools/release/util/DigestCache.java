@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the digests of large files so they are not hashed again when
+ * a command is rerun over the same files.
+ *
+ * An entry is keyed by the absolute path of the file and records the size,
+ * modification time and inode (or the platform file key) the digests were
+ * computed for.  If any of those differ the entry is ignored and the file
+ * is hashed again.  Each file gets its own small properties file so
+ * concurrent commands never contend on a shared index.
+ *
+ * Entries live in ~/.release-tools/digests unless the
+ * release-tools.digests.dir system property says otherwise.
+ */
+public class DigestCache {
+
+    private static final Global<DigestCache> GLOBAL = new Global<>(() -> new DigestCache(Global.dir("release-tools.digests.dir", "digests")));
+
+    private final File dir;
+
+    public DigestCache(final File dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir.toPath());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static DigestCache global() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * Returns the digests of the file, hashing it only if no entry matching
+     * its current size, modification time and inode has every algorithm
+     */
+    public Map<String, String> digest(final File file, final String... algorithms) throws IOException {
+        final String before = identity(file);
+        final Properties cached = load(file, before);
+
+        final Map<String, String> digests = new LinkedHashMap<>();
+        for (final String algorithm : algorithms) {
+            final String value = cached.getProperty(algorithm);
+            if (value == null) break;
+            digests.put(algorithm, value);
+        }
+        if (digests.size() == algorithms.length) return digests;
+
+        final Map<String, String> computed = Digests.digest(file, algorithms);
+
+        // Only remember what we hashed if the file did not change under us
+        if (before.equals(identity(file))) {
+            store(file, before, cached, computed);
+        }
+
+        return computed;
+    }
+
+    /**
+     * Records digests computed elsewhere, such as while the file was downloaded
+     */
+    public void put(final File file, final Map<String, String> digests) throws IOException {
+        final String identity = identity(file);
+        store(file, identity, load(file, identity), digests);
+    }
+
+    private Properties load(final File file, final String identity) throws IOException {
+        final Properties properties = new Properties();
+        final File entry = entry(file);
+        if (!entry.isFile()) return properties;
+
+        try (final InputStream in = IO.read(entry)) {
+            properties.load(in);
+        } catch (final IllegalArgumentException e) {
+            // corrupt entry, ignore it
+            return new Properties();
+        }
+
+        if (!identity.equals(properties.getProperty("identity"))) return new Properties();
+        return properties;
+    }
+
+    private void store(final File file, final String identity, final Properties previous, final Map<String, String> digests) throws IOException {
+        final Properties properties = new Properties();
+        properties.putAll(previous);
+        properties.putAll(digests);
+        properties.setProperty("path", file.getAbsolutePath());
+        properties.setProperty("identity", identity);
+
+        IO.replaceAtomically(entry(file), out -> properties.store(out, null));
+    }
+
+    private File entry(final File file) {
+        return new File(dir, Digests.hashName(file.getAbsolutePath()) + ".properties");
+    }
+
+    /**
+     * The size, modification time in nanoseconds and inode of the file
+     */
+    static String identity(final File file) throws IOException {
+        final Path path = file.toPath();
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+        Object inode;
+        try {
+            inode = Files.getAttribute(path, "unix:ino");
+        } catch (final UnsupportedOperationException | IllegalArgumentException e) {
+            inode = attributes.fileKey();
+        }
+
+        return attributes.size() + ":" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + inode;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.tomitribe.util.Hex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes several message digests over a single pass of the data.
+ *
+ * Every block read is fanned out to each configured MessageDigest, so a
+ * file only has to be read from disk once no matter how many checksums
+ * are needed.  Reads go through a large per-thread buffer that is reused
+ * across files.
+ */
+public class Digests {
+
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+    public static final String SHA512 = "SHA-512";
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    private final Map<String, MessageDigest> digests = new LinkedHashMap<>();
+
+    public Digests(final Collection<String> algorithms) {
+        for (final String algorithm : algorithms) {
+            try {
+                digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Unknown algorithm " + algorithm, e);
+            }
+        }
+    }
+
+    public static Digests of(final String... algorithms) {
+        return new Digests(Arrays.asList(algorithms));
+    }
+
+    /**
+     * Reads the file once and returns the hex encoded digest of each algorithm
+     */
+    public static Map<String, String> digest(final File file, final String... algorithms) throws IOException {
+        final Digests digests = of(algorithms);
+        try (final InputStream in = new FileInputStream(file)) {
+            digests.update(in);
+        }
+        return digests.hex();
+    }
+
+    /**
+     * A file name for a cache key: the hex SHA-1 of its UTF-8 bytes
+     */
+    public static String hashName(final String key) {
+        final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        final Digests digests = of(SHA1);
+        digests.update(bytes, 0, bytes.length);
+        return digests.hex().get(SHA1);
+    }
+
+    public void update(final byte[] bytes, final int offset, final int length) {
+        for (final MessageDigest digest : digests.values()) {
+            digest.update(bytes, offset, length);
+        }
+    }
+
+    public void update(final InputStream in) throws IOException {
+        final byte[] buffer = BUFFER.get();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            update(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Copies the stream to the output, digesting every block on the way
+     * through, and returns the number of bytes copied
+     */
+    public long copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = BUFFER.get();
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            update(buffer, 0, read);
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Completes all digests and returns them hex encoded keyed by algorithm.
+     * The digests are reset afterwards and may be reused.
+     */
+    public Map<String, String> hex() {
+        final Map<String, String> hex = new LinkedHashMap<>();
+        for (final Map.Entry<String, MessageDigest> entry : digests.entrySet()) {
+            hex.put(entry.getKey(), Hex.toString(entry.getValue().digest()));
+        }
+        return Collections.unmodifiableMap(hex);
+    }
+}
@@ -16,10 +16,47 @@
  */
 package org.apache.openejb.tools.release.util;
 
-import java.io.*;
-import java.util.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
+ * Runs external programs.
+ *
+ * The static exec, read and write methods use the directory and environment
+ * set with cd and export.  Use {@link #call} to give a process its own
+ * directory and environment and {@link Call#start} to run it without
+ * blocking, so several can run at once.
+ *
+ * At most release-tools.exec.concurrency processes run at the same time,
+ * by default the number of processors but no fewer than 4.  Further calls
+ * wait in line.  Their output is pumped by one shared pool with two
+ * threads per permitted process, so a pump never waits for a thread.
+ *
+ * Large output should not be captured: send it to a file with
+ * {@link Call#output(File)} or parse it as it arrives with
+ * {@link Call#stream}.
+ *
  * @version $Rev$ $Date$
  */
 public class Exec {
@@ -27,6 +64,14 @@ public class Exec {
     public static File dir;
     public static Map<String, String> env = new HashMap<String, String>();
 
+    private static final String PATH = "/opt/local/bin:/opt/local/sbin:/sw/bin:/sw/sbin:/usr/bin:/bin:/usr/sbin:/sbin:/usr/local/bin:/usr/X11/bin:/usr/X11R6/bin:/usr/local/bin:/Users/dblevins/bin";
+
+    private static final int concurrency = Integer.getInteger("release-tools.exec.concurrency",
+            Math.max(4, Runtime.getRuntime().availableProcessors()));
+    private static final Semaphore permits = new Semaphore(concurrency);
+    private static final Queue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private static final ExecutorService pumps = Executors.newFixedThreadPool(2 * concurrency, Threads.daemon("exec-pump"));
+
 
     public static File cd(final String string) {
         final File file = new File(string);
@@ -46,57 +91,393 @@ public class Exec {
     }
 
     public static int exec(final String program, final String... args) throws RuntimeException {
+        return join(call(program, args).output(System.out).error(System.err).start()).getExitCode();
+    }
+
+    public static OutputStream write(final String program, final String... args) throws RuntimeException {
+        return call(program, args).write();
+    }
+
+    public static InputStream read(final String program, final String... args) throws RuntimeException {
+        return call(program, args).read();
+    }
+
+    /**
+     * A process to run, starting from the current directory and environment
+     */
+    public static Call call(final String program, final String... args) {
+        return new Call(program, args);
+    }
+
+    public static int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Waits for the future, rethrowing what it failed with
+     */
+    public static <T> T join(final CompletableFuture<T> future) {
         try {
-            final Process process = call(program, args);
-            Pipe.pipe(process);
+            return future.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
 
-            return process.waitFor();
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+    private static void submit(final Runnable launch) {
+        pending.add(launch);
+        drain();
+    }
+
+    private static void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            final Runnable launch = pending.poll();
+            if (launch == null) {
+                permits.release();
+                return;
+            }
+            launch.run();
+        }
+    }
+
+    private static void acquire() {
+        try {
+            permits.acquire();
         } catch (final InterruptedException e) {
-            Thread.interrupted();
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
 
-    public static OutputStream write(final String program, final String... args) throws RuntimeException {
-        try {
-            final Process process = call(program, args);
+    private static void release() {
+        permits.release();
+        drain();
+    }
 
-            Pipe.pipe(process.getInputStream(), System.out);
-            Pipe.pipe(process.getErrorStream(), System.err);
+    private static CompletableFuture<Void> pump(final InputStream in, final OutputStream out) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                Pipe.copy(in, out);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pumps);
+    }
 
-            return new BufferedOutputStream(process.getOutputStream());
-        } catch (final IOException e) {
+    private static CompletableFuture<Void> pump(final InputStream in, final File file) {
+        return CompletableFuture.runAsync(() -> {
+            try (final FileOutputStream out = new FileOutputStream(file)) {
+                Pipe.copy(in, out.getChannel());
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, pumps);
+    }
+
+    private static int waitFor(final Process process) {
+        try {
+            return process.waitFor();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
         }
     }
 
-    public static InputStream read(final String program, final String... args) throws RuntimeException {
-        try {
-            final Process process = call(program, args);
+    public static class Call {
 
-//            Pipe.pipe(System.in, process.getOutputStream());
-            Pipe.pipe(process.getErrorStream(), System.err);
+        private final List<String> command = new ArrayList<String>();
+        private final Map<String, String> env = new HashMap<String, String>(Exec.env);
+        private File dir = Exec.dir;
+        private OutputStream output;
+        private File outputFile;
+        private OutputStream error;
+        private boolean check;
 
-            return new BufferedInputStream(process.getInputStream());
-        } catch (final IOException e) {
-            throw new RuntimeException(e);
+        private Call(final String program, final String... args) {
+            command.add(program);
+            command.addAll(Arrays.asList(args));
+        }
+
+        public Call dir(final File dir) {
+            this.dir = dir;
+            return this;
+        }
+
+        public Call env(final String key, final String value) {
+            env.put(key, value);
+            return this;
+        }
+
+        public Call env(final Map<String, String> env) {
+            this.env.putAll(env);
+            return this;
         }
-    }
 
-    private static Process call(final String program, final String... args) throws IOException {
-        final List<String> command = new ArrayList<String>();
-        command.add(program);
-        command.addAll(Arrays.asList(args));
+        /**
+         * Streams the standard output here rather than capturing it
+         */
+        public Call output(final OutputStream output) {
+            this.output = output;
+            this.outputFile = null;
+            return this;
+        }
+
+        /**
+         * Writes the standard output to the file rather than capturing it
+         */
+        public Call output(final File file) {
+            this.outputFile = file;
+            this.output = null;
+            return this;
+        }
 
-        final ProcessBuilder builder = new ProcessBuilder();
-        if (dir != null) builder.directory(new File(dir.getAbsolutePath()));
-        builder.command(command);
-        builder.environment().put("PATH", "/opt/local/bin:/opt/local/sbin:/sw/bin:/sw/sbin:/usr/bin:/bin:/usr/sbin:/sbin:/usr/local/bin:/usr/X11/bin:/usr/X11R6/bin:/usr/local/bin:/Users/dblevins/bin");
-        builder.environment().putAll(env);
-        return builder.start();
+        /**
+         * Streams the standard error here rather than capturing it
+         */
+        public Call error(final OutputStream error) {
+            this.error = error;
+            return this;
+        }
+
+        /**
+         * Makes reading the output of {@link #read} fail at its end if the
+         * process exits with a non-zero code
+         */
+        public Call check() {
+            this.check = true;
+            return this;
+        }
+
+        /**
+         * Runs the process once a slot is free.  Output not streamed
+         * elsewhere is captured in the result.
+         */
+        public CompletableFuture<Result> start() {
+            final CompletableFuture<Result> result = new CompletableFuture<Result>();
+
+            submit(() -> {
+                final ByteArrayOutputStream stdout = output == null && outputFile == null ? new ByteArrayOutputStream() : null;
+                final ByteArrayOutputStream stderr = error == null ? new ByteArrayOutputStream() : null;
+
+                final Process process;
+                try {
+                    process = process();
+                    process.getOutputStream().close();
+                } catch (final IOException e) {
+                    release();
+                    result.completeExceptionally(new RuntimeException("Unable to run " + command, e));
+                    return;
+                }
+
+                final CompletableFuture<Void> out = outputFile != null
+                        ? pump(process.getInputStream(), outputFile)
+                        : pump(process.getInputStream(), stdout != null ? stdout : output);
+
+                out.thenCombine(pump(process.getErrorStream(), stderr != null ? stderr : error), (a, b) -> waitFor(process))
+                        .whenComplete((exit, throwable) -> {
+                            release();
+                            if (throwable != null) {
+                                result.completeExceptionally(throwable);
+                            } else {
+                                result.complete(new Result(command, exit, bytes(stdout), bytes(stderr)));
+                            }
+                        });
+            });
+
+            return result;
+        }
+
+        /**
+         * Runs the process once a slot is free and hands its standard output
+         * to the consumer as it is produced.  Whatever the consumer leaves
+         * unread is discarded.  The future fails if the consumer does or the
+         * process exits with a non-zero code.  Standard error goes to
+         * System.err unless streamed elsewhere.
+         */
+        public <T> CompletableFuture<T> stream(final StreamConsumer<T> consumer) {
+            final CompletableFuture<T> result = new CompletableFuture<T>();
+
+            submit(() -> {
+                final Process process;
+                try {
+                    process = process();
+                    process.getOutputStream().close();
+                } catch (final IOException e) {
+                    release();
+                    result.completeExceptionally(new RuntimeException("Unable to run " + command, e));
+                    return;
+                }
+
+                final CompletableFuture<T> consumed = CompletableFuture.supplyAsync(() -> {
+                    try (final InputStream in = new BufferedInputStream(process.getInputStream(), Pipe.BUFFER_SIZE)) {
+                        final T value = consumer.consume(in);
+                        final byte[] skip = new byte[Pipe.BUFFER_SIZE];
+                        while (in.read(skip) != -1) {
+                            // let the process finish writing
+                        }
+                        return value;
+                    } catch (final IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, pumps);
+
+                consumed.thenCombine(pump(process.getErrorStream(), error != null ? error : System.err), (value, v) -> {
+                    final int exit = waitFor(process);
+                    if (exit != 0) throw new IllegalStateException(command + " exited with " + exit);
+                    return value;
+                }).whenComplete((value, throwable) -> {
+                    release();
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            });
+
+            return result;
+        }
+
+        /**
+         * Starts the process, blocking until a slot is free, and returns its
+         * standard output.  Standard error goes to System.err unless
+         * streamed elsewhere.  Closing the stream before its end stops the
+         * process, so its slot is not held by output nobody reads.
+         */
+        public InputStream read() {
+            acquire();
+            final Process process;
+            try {
+                process = process();
+                process.getOutputStream().close();
+            } catch (final IOException e) {
+                release();
+                throw new RuntimeException(e);
+            }
+
+            final CompletableFuture<Integer> exit = pump(process.getErrorStream(), error != null ? error : System.err)
+                    .thenApply(v -> waitFor(process))
+                    .whenComplete((code, throwable) -> release());
+
+            return new FilterInputStream(new BufferedInputStream(process.getInputStream(), Pipe.BUFFER_SIZE)) {
+                private boolean done;
+
+                @Override
+                public int read() throws IOException {
+                    return end(super.read());
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    return end(super.read(b, off, len));
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    if (!done) process.destroy();
+                }
+
+                private int end(final int read) throws IOException {
+                    if (read != -1 || done) return read;
+                    done = true;
+
+                    final int code;
+                    try {
+                        code = exit.join();
+                    } catch (final CompletionException e) {
+                        throw new IOException(command + " failed", e.getCause());
+                    }
+                    if (check && code != 0) throw new IOException(command + " exited with " + code);
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Starts the process, blocking until a slot is free, and returns its
+         * standard input.  Its output goes to System.out and System.err
+         * unless streamed elsewhere.
+         */
+        public OutputStream write() {
+            acquire();
+            try {
+                final Process process = process();
+
+                final CompletableFuture<Void> out = outputFile != null
+                        ? pump(process.getInputStream(), outputFile)
+                        : pump(process.getInputStream(), output != null ? output : System.out);
+
+                out.thenCombine(pump(process.getErrorStream(), error != null ? error : System.err), (a, b) -> waitFor(process))
+                        .whenComplete((v, throwable) -> release());
+
+                return new BufferedOutputStream(process.getOutputStream(), Pipe.BUFFER_SIZE);
+            } catch (final IOException e) {
+                release();
+                throw new RuntimeException(e);
+            }
+        }
+
+        private Process process() throws IOException {
+            final ProcessBuilder builder = new ProcessBuilder();
+            if (dir != null) builder.directory(new File(dir.getAbsolutePath()));
+            builder.command(command);
+            builder.environment().put("PATH", PATH);
+            builder.environment().putAll(env);
+            return builder.start();
+        }
+
+        private static byte[] bytes(final ByteArrayOutputStream captured) {
+            return captured != null ? captured.toByteArray() : null;
+        }
     }
 
+    public static class Result {
+
+        private final List<String> command;
+        private final int exitCode;
+        private final byte[] output;
+        private final byte[] error;
+
+        public Result(final List<String> command, final int exitCode, final byte[] output, final byte[] error) {
+            this.command = command;
+            this.exitCode = exitCode;
+            this.output = output;
+            this.error = error;
+        }
+
+        public List<String> getCommand() {
+            return command;
+        }
+
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * The captured standard output, or an empty string if it was
+         * streamed elsewhere
+         */
+        public String getOutput() {
+            return output != null ? new String(output, StandardCharsets.UTF_8) : "";
+        }
+
+        /**
+         * The captured standard error, or an empty string if it was
+         * streamed elsewhere
+         */
+        public String getError() {
+            return error != null ? new String(error, StandardCharsets.UTF_8) : "";
+        }
+
+        public boolean isSuccess() {
+            return exitCode == 0;
+        }
 
+        @Override
+        public String toString() {
+            return command + " exited with " + exitCode;
+        }
+    }
 }
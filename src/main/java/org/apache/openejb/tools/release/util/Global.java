@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+/**
+ * The single instance of a cache shared by every command in the process,
+ * created on first use.
+ *
+ *     private static final Global<ListingCache> GLOBAL =
+ *             new Global<>(() -> new ListingCache(Global.dir("release-tools.listings.dir", "listings")));
+ */
+public class Global<T> {
+
+    private final Supplier<T> create;
+    private volatile T instance;
+
+    public Global(final Supplier<T> create) {
+        this.create = create;
+    }
+
+    public T get() {
+        if (instance == null) {
+            synchronized (this) {
+                if (instance == null) {
+                    instance = create.get();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The directory named by the system property, or ~/.release-tools/name
+     */
+    public static File dir(final String property, final String name) {
+        final String dir = System.getProperty(property,
+                new File(System.getProperty("user.home"), ".release-tools/" + name).getAbsolutePath());
+        return new File(dir);
+    }
+}
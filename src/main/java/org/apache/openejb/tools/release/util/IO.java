@@ -18,6 +18,10 @@ package org.apache.openejb.tools.release.util;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Properties;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -47,6 +51,31 @@ public class IO {
         }
     }
 
+    /**
+     * Writes the string as its UTF-8 length followed by its bytes, or a
+     * length of -1 for null, to be read back with {@link #readString(DataInput)}
+     */
+    public static void writeString(final DataOutput out, final String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}
+     */
+    public static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) return null;
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     public static Properties readProperties(final InputStream in) throws IOException {
         return readProperties(in, new Properties());
     }
@@ -169,6 +198,41 @@ public class IO {
         return true;
     }
 
+    /**
+     * Moves the source over the target in one step where the file system
+     * allows it, so readers see either the old file or the new one
+     */
+    public static void replaceAtomically(final File source, final File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Writes the content to a temporary file next to the target, then moves
+     * it over the target with {@link #replaceAtomically(File, File)}
+     */
+    public static void replaceAtomically(final File target, final Content content) throws IOException {
+        final File dir = target.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+
+        final File tmp = File.createTempFile(target.getName(), ".tmp", dir);
+        try {
+            try (final OutputStream out = write(tmp)) {
+                content.writeTo(out);
+            }
+            replaceAtomically(tmp, target);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
     public static OutputStream write(final File destination) throws FileNotFoundException {
         final OutputStream out = new FileOutputStream(destination);
         return new BufferedOutputStream(out, 32768);
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * Keeps the last response body of small repository listings such as
+ * maven-metadata.xml along with the ETag and Last-Modified headers it came
+ * with, so the next request can be a conditional one and a 304 answered
+ * from disk.
+ *
+ * Entries live in ~/.release-tools/listings unless the
+ * release-tools.listings.dir system property says otherwise.
+ */
+public class ListingCache {
+
+    private static final Global<ListingCache> GLOBAL = new Global<>(() -> new ListingCache(Global.dir("release-tools.listings.dir", "listings")));
+
+    private final File dir;
+
+    public ListingCache(final File dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir.toPath());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ListingCache global() {
+        return GLOBAL.get();
+    }
+
+    public Entry get(final String key) throws IOException {
+        final File headers = file(key, "properties");
+        final File body = file(key, "body");
+        if (!headers.isFile() || !body.isFile()) return null;
+
+        final Properties properties = new Properties();
+        try (final InputStream in = IO.read(headers)) {
+            properties.load(in);
+        }
+
+        if (!key.equals(properties.getProperty("key"))) return null;
+
+        return new Entry(properties.getProperty("etag"), properties.getProperty("last-modified"),
+                Files.readAllBytes(body.toPath()));
+    }
+
+    /**
+     * Stores the body and its validators.  Responses with neither an ETag
+     * nor a Last-Modified header cannot be revalidated and are not kept.
+     */
+    public void put(final String key, final String etag, final String lastModified, final byte[] content) throws IOException {
+        if (etag == null && lastModified == null) return;
+
+        final Properties properties = new Properties();
+        properties.setProperty("key", key);
+        if (etag != null) properties.setProperty("etag", etag);
+        if (lastModified != null) properties.setProperty("last-modified", lastModified);
+
+        // body first so the headers never describe a body we do not have
+        IO.replaceAtomically(file(key, "body"), out -> out.write(content));
+        IO.replaceAtomically(file(key, "properties"), out -> properties.store(out, null));
+    }
+
+    private File file(final String key, final String extension) {
+        return new File(dir, Digests.hashName(key) + "." + extension);
+    }
+
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final byte[] content;
+
+        public Entry(final String etag, final String lastModified, final byte[] content) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
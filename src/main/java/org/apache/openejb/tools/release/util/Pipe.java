@@ -16,14 +16,25 @@
  */
 package org.apache.openejb.tools.release.util;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
+ * Copies process output to where it is needed.  Files are written with
+ * FileChannel transfers so the bytes do not pass through a heap buffer.
+ *
  * @version $Rev$ $Date$
  */
 public final class Pipe implements Runnable {
 
+    public static final int BUFFER_SIZE = 64 * 1024;
+
     private final InputStream in;
     private final OutputStream out;
 
@@ -44,15 +55,60 @@ public final class Pipe implements Runnable {
         thread.start();
     }
 
-    public void run() {
-        try {
-            int i = -1;
+    /**
+     * Copies everything from in to out, through the file channel when out
+     * is a file
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(final InputStream in, final OutputStream out) throws IOException {
+        if (out instanceof FileOutputStream) {
+            return copy(in, ((FileOutputStream) out).getChannel());
+        }
+
+        long total = 0;
+        final byte[] buf = new byte[BUFFER_SIZE];
+        int i;
+        while ((i = in.read(buf)) != -1) {
+            out.write(buf, 0, i);
+            total += i;
+        }
+        out.flush();
+        return total;
+    }
 
-            final byte[] buf = new byte[1024];
+    /**
+     * Appends everything from in to the file at its current position
+     *
+     * @return the number of bytes copied
+     */
+    public static long copy(final InputStream in, final FileChannel file) throws IOException {
+        final long start = file.position();
+        long position = start;
 
-            while ((i = in.read(buf)) != -1) {
-                out.write(buf, 0, i);
+        if (in instanceof FileInputStream) {
+            final FileChannel source = ((FileInputStream) in).getChannel();
+            long transferred;
+            while ((transferred = source.transferTo(source.position(), Long.MAX_VALUE, file)) > 0) {
+                source.position(source.position() + transferred);
+                position += transferred;
             }
+        } else {
+            // a blocking channel transfers at least one byte unless it is at the end
+            final ReadableByteChannel source = Channels.newChannel(in);
+            long transferred;
+            while ((transferred = file.transferFrom(source, position, 16L * BUFFER_SIZE)) > 0) {
+                position += transferred;
+            }
+        }
+
+        file.position(position);
+        return position - start;
+    }
+
+    public void run() {
+        try {
+            copy(in, out);
         } catch (final Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A chain of stages connected by bounded queues.  Each stage has its own
+ * pool of worker threads; when a downstream queue is full the upstream
+ * workers block, so a slow stage naturally throttles the ones before it
+ * while items already handed over keep flowing through the rest.
+ *
+ *     final Pipeline.Result<File> result = Pipeline.<String>start()
+ *             .then("discover", 2, (path, emit) -> list(path).forEach(emit))
+ *             .then("download", 4, (uri, emit) -> emit.accept(download(uri)))
+ *             .run(paths);
+ *
+ * The first failure in any stage stops every worker and is rethrown
+ * from {@link #run}.
+ */
+public class Pipeline<I, O> {
+
+    private static final Object END = new Object();
+
+    private final List<Stage<?, ?>> stages;
+
+    private Pipeline(final List<Stage<?, ?>> stages) {
+        this.stages = stages;
+    }
+
+    public static <I> Pipeline<I, I> start() {
+        return new Pipeline<>(Collections.emptyList());
+    }
+
+    public <N> Pipeline<I, N> then(final String name, final int workers, final Step<O, N> step) {
+        return then(name, workers, workers * 2, step);
+    }
+
+    /**
+     * @param workers the number of threads processing items for this stage
+     * @param capacity how many items may wait for this stage before upstream stages block
+     */
+    public <N> Pipeline<I, N> then(final String name, final int workers, final int capacity, final Step<O, N> step) {
+        if (workers < 1) throw new IllegalArgumentException(name + " needs at least one worker");
+
+        final List<Stage<?, ?>> list = new ArrayList<>(stages);
+        list.add(new Stage<>(name, workers, Math.max(1, capacity), step));
+        return new Pipeline<>(list);
+    }
+
+    public Result<O> run(final Collection<? extends I> inputs) throws Exception {
+        if (stages.isEmpty()) throw new IllegalStateException("Pipeline has no stages");
+
+        final List<Object> outputs = Collections.synchronizedList(new ArrayList<>());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<ExecutorService> executors = new ArrayList<>();
+        final List<StageStats> stats = new ArrayList<>();
+
+        final List<BlockingQueue<Object>> queues = new ArrayList<>();
+        for (final Stage<?, ?> stage : stages) {
+            queues.add(new ArrayBlockingQueue<>(stage.capacity));
+        }
+
+        for (int i = 0; i < stages.size(); i++) {
+            final Stage<?, ?> stage = stages.get(i);
+            final BlockingQueue<Object> in = queues.get(i);
+            final boolean last = i == stages.size() - 1;
+            final BlockingQueue<Object> next = last ? null : queues.get(i + 1);
+            final int nextWorkers = last ? 0 : stages.get(i + 1).workers;
+
+            final StageStats stageStats = new StageStats(stage.name, stage.workers);
+            stats.add(stageStats);
+
+            final AtomicInteger running = new AtomicInteger(stage.workers);
+
+            final ExecutorService executor = Executors.newFixedThreadPool(stage.workers, Threads.daemon(stage.name));
+            executors.add(executor);
+
+            for (int w = 0; w < stage.workers; w++) {
+                executor.execute(() -> {
+                    // time spent waiting for room downstream is not work done by this stage
+                    final long[] blocked = new long[1];
+                    final Consumer<Object> emit = last ? outputs::add : item -> {
+                        final long start = System.nanoTime();
+                        put(next, item);
+                        blocked[0] += System.nanoTime() - start;
+                    };
+
+                    try {
+                        Object item;
+                        while ((item = in.take()) != END) {
+                            blocked[0] = 0;
+                            final long start = System.nanoTime();
+                            stageStats.started(start);
+                            stage.process(item, emit);
+                            stageStats.processed(start, System.nanoTime(), blocked[0]);
+                        }
+
+                        if (running.decrementAndGet() == 0) {
+                            if (last) {
+                                done.countDown();
+                            } else {
+                                for (int n = 0; n < nextWorkers; n++) {
+                                    put(next, END);
+                                }
+                            }
+                        }
+                    } catch (final Throwable t) {
+                        if (failure.compareAndSet(null, unwrap(t))) {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+        }
+
+        final Thread feeder = Threads.daemon("feed").newThread(() -> {
+            try {
+                final BlockingQueue<Object> first = queues.get(0);
+                for (final I input : inputs) {
+                    first.put(input);
+                }
+                for (int n = 0; n < stages.get(0).workers; n++) {
+                    first.put(END);
+                }
+            } catch (final InterruptedException e) {
+                // the pipeline failed and is shutting down
+            }
+        });
+        feeder.start();
+
+        try {
+            done.await();
+        } finally {
+            feeder.interrupt();
+            executors.forEach(ExecutorService::shutdownNow);
+        }
+
+        final Throwable throwable = failure.get();
+        if (throwable instanceof Exception) throw (Exception) throwable;
+        if (throwable instanceof Error) throw (Error) throwable;
+
+        return new Result<>(cast(outputs), stats);
+    }
+
+    /**
+     * Items cross the queues untyped; {@link #then} only ever appends a stage
+     * whose input is the previous stage's output, so the last stage emits O.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> cast(final List<Object> outputs) {
+        return (List<T>) (List<?>) outputs;
+    }
+
+    private static void put(final BlockingQueue<Object> queue, final Object item) {
+        try {
+            queue.put(item);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Pipeline interrupted", e);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable t) {
+        if (t instanceof IllegalStateException && t.getCause() instanceof InterruptedException) {
+            return t.getCause();
+        }
+        return t;
+    }
+
+    public interface Step<I, O> {
+        void process(I item, Consumer<? super O> emit) throws Exception;
+    }
+
+    private static class Stage<A, B> {
+        private final String name;
+        private final int workers;
+        private final int capacity;
+        private final Step<A, B> step;
+
+        Stage(final String name, final int workers, final int capacity, final Step<A, B> step) {
+            this.name = name;
+            this.workers = workers;
+            this.capacity = capacity;
+            this.step = step;
+        }
+
+        /**
+         * The item came off this stage's queue, which only the previous
+         * stage (emitting A) or the feeder (for the first stage, I == A) fills.
+         */
+        @SuppressWarnings("unchecked")
+        void process(final Object item, final Consumer<Object> emit) throws Exception {
+            step.process((A) item, emit);
+        }
+    }
+
+    public static class Result<O> {
+        private final List<O> outputs;
+        private final List<StageStats> stages;
+
+        Result(final List<O> outputs, final List<StageStats> stages) {
+            this.outputs = Collections.unmodifiableList(outputs);
+            this.stages = Collections.unmodifiableList(stages);
+        }
+
+        public List<O> getOutputs() {
+            return outputs;
+        }
+
+        public List<StageStats> getStages() {
+            return stages;
+        }
+    }
+
+    /**
+     * Per stage counters.  Busy time is summed across all workers and leaves
+     * out time spent blocked handing items to the next stage, elapsed time
+     * runs from the first item the stage started to the last it finished.
+     * A stage with utilization near 100% is the one limiting the pipeline.
+     */
+    public static class StageStats {
+        private final String name;
+        private final int workers;
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busy = new AtomicLong();
+        private final AtomicLong first = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong last = new AtomicLong(Long.MIN_VALUE);
+
+        StageStats(final String name, final int workers) {
+            this.name = name;
+            this.workers = workers;
+        }
+
+        void started(final long start) {
+            first.accumulateAndGet(start, Math::min);
+        }
+
+        void processed(final long start, final long end, final long blocked) {
+            items.incrementAndGet();
+            busy.addAndGet(end - start - blocked);
+            last.accumulateAndGet(end, Math::max);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getItems() {
+            return items.get();
+        }
+
+        public long getElapsedMillis() {
+            if (items.get() == 0) return 0;
+            return TimeUnit.NANOSECONDS.toMillis(last.get() - first.get());
+        }
+
+        public double getItemsPerSecond() {
+            final long elapsed = last.get() - first.get();
+            if (items.get() == 0 || elapsed <= 0) return 0;
+            return items.get() / (elapsed / 1_000_000_000d);
+        }
+
+        public double getUtilization() {
+            final long elapsed = last.get() - first.get();
+            if (items.get() == 0 || elapsed <= 0) return 0;
+            return busy.get() / ((double) elapsed * workers);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %4d items  %2d workers  %8d ms  %8.2f items/s  %5.1f%% busy",
+                    name, getItems(), workers, getElapsedMillis(), getItemsPerSecond(), getUtilization() * 100);
+        }
+    }
+}
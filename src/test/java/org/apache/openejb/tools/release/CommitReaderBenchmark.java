@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.bind.JAXBContext;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares unmarshalling a synthetic svn log --verbose --xml into Commit.Log
+ * with JAXB against reading it one commit at a time with CommitReader.  Both
+ * count the commits that mention a TOMEE issue.
+ *
+ * The gc profiler reports the bytes allocated per operation.  Peak heap is
+ * the other difference: JAXB holds every commit until the log is parsed,
+ * the reader holds one.  Lower -Xmx in jvmArgsAppend to see where JAXB
+ * runs out of memory.
+ *
+ * Run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.apache.openejb.tools.release.CommitReaderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CommitReaderBenchmark {
+
+    @Param({"200000"})
+    public int revisions;
+
+    private File log;
+    private JAXBContext context;
+
+    @Setup
+    public void setUp() throws Exception {
+        log = File.createTempFile("svn-log", ".xml");
+        context = JAXBContext.newInstance(Commit.Log.class);
+
+        final Instant start = Instant.parse("2007-01-01T00:00:00.000000Z");
+
+        try (final Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(log.toPath()), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<log>\n");
+            for (int revision = revisions; revision > 0; revision--) {
+                out.write("<logentry revision=\"" + revision + "\">\n");
+                out.write("<author>committer" + (revision % 40) + "</author>\n");
+                out.write("<date>" + start.plusSeconds(revision * 1200L) + "</date>\n");
+                out.write("<paths>\n");
+                for (int i = 0; i < 4; i++) {
+                    out.write("<path kind=\"file\" action=\"M\" prop-mods=\"false\" text-mods=\"true\">"
+                            + "/tomee/tomee/trunk/container/openejb-core/src/main/java/org/apache/openejb/Module" + (revision + i) % 500 + ".java</path>\n");
+                }
+                out.write("</paths>\n");
+                out.write("<msg>" + (revision % 3 == 0 ? "TOMEE-" + revision % 4000 + " " : "")
+                        + "Fixed the handling of &lt;resource&gt; references in the assembler &amp; added a test</msg>\n");
+                out.write("</logentry>\n");
+            }
+            out.write("</log>\n");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        log.delete();
+    }
+
+    @Benchmark
+    public long jaxb() throws Exception {
+        try (final InputStream in = open()) {
+            final Commit.Log commits = (Commit.Log) context.createUnmarshaller().unmarshal(in);
+
+            long count = 0;
+            for (final Commit commit : commits.getCommits()) {
+                if (commit.getMessage().contains("TOMEE-")) count++;
+            }
+            return count;
+        }
+    }
+
+    @Benchmark
+    public long stax() throws Exception {
+        try (final InputStream in = open();
+             final CommitReader commits = new CommitReader(in)) {
+            return commits.stream()
+                    .filter(commit -> commit.getMessage().contains("TOMEE-"))
+                    .count();
+        }
+    }
+
+    private InputStream open() throws IOException {
+        return new BufferedInputStream(new FileInputStream(log), 64 * 1024);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(CommitReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
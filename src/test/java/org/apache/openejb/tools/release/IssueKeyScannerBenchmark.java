@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the ways issue keys have been pulled out of commit messages:
+ * upper-casing the text and running a regex over it, splitting each
+ * message into tokens and matching every token, and IssueKeyScanner.
+ * Each returns the number of keys found in a synthetic set of messages.
+ *
+ * Run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.apache.openejb.tools.release.IssueKeyScannerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IssueKeyScannerBenchmark {
+
+    private static final Pattern PATTERN = Pattern.compile("((OPENEJB|TOMEE)-[0-9]+)");
+
+    @Param({"100000"})
+    public int messages;
+
+    private final List<String> log = new ArrayList<>();
+    private final IssueKeyScanner scanner = new IssueKeyScanner("OPENEJB", "TOMEE");
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < messages; i++) {
+            final StringBuilder message = new StringBuilder();
+            if (i % 3 == 0) message.append("TOMEE-").append(i % 4000).append(' ');
+            if (i % 7 == 0) message.append("openejb-").append(i % 2000).append(": ");
+            message.append("Fixed the handling of <resource> references in the assembler and added a test for ");
+            message.append("Module").append(i % 500).append(".java, see the discussion on the dev list");
+            log.add(message.toString());
+        }
+    }
+
+    @Benchmark
+    public int upperCaseRegex() {
+        int count = 0;
+        for (final String message : log) {
+            final Matcher matcher = PATTERN.matcher(message.toUpperCase());
+            while (matcher.find()) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int splitAndMatch() {
+        int count = 0;
+        for (final String message : log) {
+            for (final String token : message.split("[^A-Z0-9-]+")) {
+                if (token.matches("(OPENEJB|TOMEE)-[0-9]+")) count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int scanner() {
+        final int[] count = {0};
+        for (final String message : log) {
+            scanner.scan(message, key -> count[0]++);
+        }
+        return count[0];
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(IssueKeyScannerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
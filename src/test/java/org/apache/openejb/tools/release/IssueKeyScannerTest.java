@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class IssueKeyScannerTest {
+
+    private final IssueKeyScanner scanner = new IssueKeyScanner("OPENEJB", "TOMEE", "TOMEEX");
+
+    @Test
+    public void keys() throws Exception {
+        assertEquals(Arrays.asList("TOMEE-123", "OPENEJB-4"), scanner.keys("TOMEE-123 fixed along with openejb-4."));
+        assertEquals(Arrays.asList("TOMEE-1", "TOMEE-2", "TOMEE-3"), scanner.keys("TOMEE-1TOMEE-2TOMEE-3"));
+        assertEquals(Arrays.asList("TOMEEX-7", "TOMEE-8"), scanner.keys("(TomeeX-7, TOMEE-8)"));
+        assertEquals(Collections.singletonList("TOMEE-9"), scanner.keys("TOMEE-TOMEE-9"));
+        assertEquals(Collections.singletonList("TOMEE-10"), scanner.keys("TOMEE-10a"));
+    }
+
+    @Test
+    public void ignoresKeysInsideWords() throws Exception {
+        assertEquals(Collections.emptyList(), scanner.keys("MYTOMEE-1 TOMEE- TOMEE1 TOM-2 GERONIMO-3"));
+        assertEquals(Collections.emptyList(), scanner.keys(null));
+    }
+
+    @Test
+    public void reader() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("see TOMEE-").append(i).append(' ');
+        }
+
+        final List<String> keys = new ArrayList<>();
+        scanner.scan(new StringReader(text.toString()), keys::add);
+
+        assertEquals(5000, keys.size());
+        assertEquals("TOMEE-4999", keys.get(4999));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.cmd;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JournalTest {
+
+    private File part;
+
+    @Before
+    public void setUp() throws Exception {
+        part = new File(Files.createTempDirectory("journal").toFile(), "apache-tomee-8.0.1-plus.zip.part");
+    }
+
+    @Test
+    public void progressIsReadBackByTheNextRun() throws Exception {
+        final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("ETag", "\"v1\"");
+
+        final Dist.Journal journal = Dist.Journal.of(part);
+        journal.begin(0, response);
+        try (final OutputStream out = journal.append()) {
+            out.write(new byte[300], 0, 300);
+        }
+        journal.save();
+
+        final Dist.Journal resumed = Dist.Journal.of(part);
+        assertEquals(300, resumed.getReceived());
+        assertEquals("\"v1\"", resumed.getValidator());
+    }
+
+    @Test
+    public void progressBeyondThePartFileIsNotTrusted() throws Exception {
+        Files.write(part.toPath(), new byte[100]);
+        Files.write(new File(part.getParentFile(), part.getName() + ".journal").toPath(), "received=500\n".getBytes());
+
+        assertEquals(100, Dist.Journal.of(part).getReceived());
+    }
+
+    @Test
+    public void segmentsKeepTheirOwnProgress() throws Exception {
+        final Dist.Journal journal = Dist.Journal.of(part);
+        journal.beginSegmented(1000, "\"v1\"", 3);
+        journal.received(0, 334);
+        journal.received(2, 10);
+        journal.save();
+
+        final Dist.Journal resumed = Dist.Journal.of(part);
+        assertTrue(resumed.isSegmented());
+        assertEquals(3, resumed.getSegmentCount());
+        assertEquals(334, resumed.getSegmentReceived(0));
+        assertEquals(0, resumed.getSegmentReceived(1));
+        assertEquals(10, resumed.getSegmentReceived(2));
+        assertEquals(668, resumed.getSegmentStart(2));
+        assertEquals(999, resumed.getSegmentEnd(2));
+
+        // a different file on the server means starting over
+        resumed.beginSegmented(1000, "\"v2\"", 3);
+        assertEquals(0, resumed.getSegmentReceived(0));
+
+        resumed.discard();
+        assertFalse(part.exists());
+        assertNull(Dist.Journal.of(part).getValidator());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.cmd;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.openejb.tools.release.util.Digests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class MavenRepoTest {
+
+    private static final String ARTIFACT = "org/apache/tomee/apache-tomee/";
+    private static final String PATH = "/nexus/content/groups/public/";
+    private static final String ETAG = "\"v1\"";
+
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<String> ranges = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private URI base;
+    private Dist.MavenRepo repo;
+
+    /**
+     * When set, 206 responses claim to start at this byte whatever was asked for
+     */
+    private volatile Long claimedStart;
+
+    @Before
+    public void start() throws IOException {
+        System.setProperty("release-tools.listings.dir", Files.createTempDirectory("listings").toString());
+        System.setProperty("release-tools.cache.dir", Files.createTempDirectory("cache").toString());
+        System.setProperty("release-tools.digests.dir", Files.createTempDirectory("digests").toString());
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.start();
+
+        base = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + PATH);
+        repo = new Dist.MavenRepo(base, new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+        }));
+
+        put(PATH + ARTIFACT + "maven-metadata.xml", "<metadata>" +
+                "<groupId>org.apache.tomee</groupId><artifactId>apache-tomee</artifactId>" +
+                "<versioning><versions><version>8.0.1</version></versions></versioning></metadata>");
+    }
+
+    @After
+    public void stop() throws IOException {
+        repo.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void groupsAreListedThroughTheRepoGroupsApi() throws Exception {
+        put("/nexus/service/local/repo_groups/public/content/" + ARTIFACT + "8.0.1/", "<content><data>" +
+                item("apache-tomee-8.0.1-plus.zip") +
+                item("apache-tomee-8.0.1-plus.zip.sha1") +
+                item("apache-tomee-8.0.1.pom") +
+                "</data></content>");
+
+        final List<URI> binaries = repo.binaries(ARTIFACT, "8.0.1");
+
+        assertEquals(Arrays.asList("apache-tomee-8.0.1-plus.zip", "apache-tomee-8.0.1-plus.zip.sha1"),
+                Arrays.asList(name(binaries.get(0)), name(binaries.get(1))));
+        assertEquals(2, binaries.size());
+    }
+
+    @Test
+    public void versionsMissingFromTheMetadataAreNotListedThroughTheApi() throws Exception {
+        try {
+            repo.binaries(ARTIFACT, "8.0.2");
+            fail("expected the missing version directory to be reported");
+        } catch (final CommandFailedException e) {
+            assertEquals("No such version directory " + base.resolve(ARTIFACT + "8.0.2/"), e.getMessage());
+        }
+
+        assertFalse(requests.toString(), requests.stream().anyMatch(path -> path.contains("/service/local/")));
+    }
+
+    @Test
+    public void interruptedDownloadsResumeWhereTheyStopped() throws Exception {
+        final byte[] content = binary(1);
+        final File dir = partial(content, 1000);
+
+        final Dist.Download download = repo.download(artifact(), dir);
+
+        assertArrayEquals(content, Files.readAllBytes(download.getFile().toPath()));
+        assertEquals(Collections.singletonList("bytes=1000-"), ranges);
+        assertFalse(new File(dir, "apache-tomee-8.0.1-plus.zip.part").exists());
+        assertFalse(new File(dir, "apache-tomee-8.0.1-plus.zip.part.journal").exists());
+    }
+
+    @Test
+    public void resumesAnsweredFromTheWrongOffsetStartOver() throws Exception {
+        final byte[] content = binary(2);
+        final File dir = partial(content, 1000);
+        claimedStart = 0L;
+
+        final Dist.Download download = repo.download(artifact(), dir);
+
+        // appending the 206 body to the 1000 bytes we had would have failed the sha1 check
+        assertArrayEquals(content, Files.readAllBytes(download.getFile().toPath()));
+        assertEquals(Arrays.asList("bytes=1000-", null), ranges);
+    }
+
+    /**
+     * Publishes a binary and its sha1, each test with its own content so
+     * none is answered from the shared artifact cache
+     */
+    private byte[] binary(final long seed) {
+        final byte[] content = new byte[64 * 1024];
+        new Random(seed).nextBytes(content);
+
+        final Digests digests = Digests.of(Digests.SHA1);
+        digests.update(content, 0, content.length);
+
+        files.put(PATH + ARTIFACT + "8.0.1/apache-tomee-8.0.1-plus.zip", content);
+        put(PATH + ARTIFACT + "8.0.1/apache-tomee-8.0.1-plus.zip.sha1", digests.hex().get(Digests.SHA1));
+        return content;
+    }
+
+    /**
+     * A directory holding what an earlier, interrupted run left behind
+     */
+    private static File partial(final byte[] content, final int received) throws IOException {
+        final File dir = Files.createTempDirectory("download").toFile();
+        Files.write(new File(dir, "apache-tomee-8.0.1-plus.zip.part").toPath(), Arrays.copyOf(content, received));
+        Files.write(new File(dir, "apache-tomee-8.0.1-plus.zip.part.journal").toPath(),
+                ("received=" + received + "\nvalidator=" + ETAG + "\n").getBytes(StandardCharsets.UTF_8));
+        return dir;
+    }
+
+    private Dist.Artifact artifact() {
+        final URI binary = base.resolve(ARTIFACT + "8.0.1/apache-tomee-8.0.1-plus.zip");
+        return new Dist.Artifact(binary, Collections.singletonList(URI.create(binary + ".sha1")));
+    }
+
+    private void put(final String path, final String content) {
+        files.put(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String item(final String name) {
+        return "<content-item><text>" + name + "</text><leaf>true</leaf></content-item>";
+    }
+
+    private static String name(final URI uri) {
+        final String path = uri.getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Serves the files with an ETag, honoring "bytes=N-" ranges guarded by a matching If-Range
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            requests.add(path);
+
+            final byte[] content = files.get(path);
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.getResponseHeaders().add("ETag", ETAG);
+
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (path.endsWith(".zip")) ranges.add(range);
+
+            if (range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+                final int start = Integer.parseInt(range.replaceAll("bytes=(\\d+)-.*", "$1"));
+                final long claimed = claimedStart != null ? claimedStart : start;
+                exchange.getResponseHeaders().add("Content-Range",
+                        "bytes " + claimed + "-" + (content.length - 1) + "/" + content.length);
+                exchange.sendResponseHeaders(206, content.length - claimed);
+                exchange.getResponseBody().write(content, (int) claimed, (int) (content.length - claimed));
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, content.length);
+            exchange.getResponseBody().write(content);
+        } finally {
+            exchange.close();
+        }
+    }
+}
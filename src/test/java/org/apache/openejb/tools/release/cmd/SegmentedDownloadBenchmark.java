@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.cmd;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.openejb.tools.release.util.Digests;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares single-stream and segmented downloads of one large binary from a
+ * local HTTP server that caps the throughput of each connection, the way a
+ * distant repository does for a single TCP stream.
+ *
+ * Run with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.apache.openejb.tools.release.cmd.SegmentedDownloadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SegmentedDownloadBenchmark {
+
+    private static final String NAME = "apache-tomee-8.0.99-plus.zip";
+
+    /**
+     * 1 is a plain single-stream download
+     */
+    @Param({"1", "2", "4", "8"})
+    public int segments;
+
+    @Param({"67108864"})
+    public int size;
+
+    /**
+     * Bytes per second allowed on each connection
+     */
+    @Param({"33554432"})
+    public int bytesPerSecond;
+
+    private HttpServer server;
+    private File root;
+    private File work;
+    private Dist.MavenRepo repo;
+    private Dist.Artifact artifact;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("repository").toFile();
+
+        final byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        Files.write(new File(root, NAME).toPath(), bytes);
+
+        final Digests digests = Digests.of(Digests.SHA1);
+        digests.update(bytes, 0, bytes.length);
+        Files.write(new File(root, NAME + ".sha1").toPath(), digests.hex().get(Digests.SHA1).getBytes(StandardCharsets.UTF_8));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        final URI base = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        artifact = new Dist.Artifact(base.resolve(NAME), Collections.singletonList(base.resolve(NAME + ".sha1")));
+
+        final PrintStream quiet = new PrintStream(new OutputStream() {
+            @Override
+            public void write(final int b) {
+            }
+        });
+        repo = new Dist.MavenRepo(base, quiet, 1, Math.max(2, segments), segments, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() throws IOException {
+        work = Files.createTempDirectory("download").toFile();
+    }
+
+    @TearDown(Level.Invocation)
+    public void delete() {
+        final File[] files = work.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        work.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repo.close();
+        server.stop(0);
+        new File(root, NAME).delete();
+        new File(root, NAME + ".sha1").delete();
+        root.delete();
+    }
+
+    @Benchmark
+    public Dist.Download download() throws IOException {
+        return repo.download(artifact, work);
+    }
+
+    /**
+     * Serves files from the root with HEAD and single byte-range support,
+     * writing no faster than bytesPerSecond on each connection.
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+        try {
+            final File file = new File(root, exchange.getRequestURI().getPath().substring(1));
+            if (!file.isFile()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            final byte[] bytes = Files.readAllBytes(file.toPath());
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            exchange.getResponseHeaders().add("ETag", "\"" + bytes.length + "\"");
+
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                // The JDK server closes the connection after a HEAD with no body length, say so
+                exchange.getResponseHeaders().add("Content-Length", Integer.toString(bytes.length));
+                exchange.getResponseHeaders().add("Connection", "close");
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            int start = 0;
+            int end = bytes.length - 1;
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            if (range != null) {
+                final String[] bounds = range.replace("bytes=", "").split("-");
+                start = Integer.parseInt(bounds[0]);
+                if (bounds.length > 1 && !bounds[1].isEmpty()) end = Integer.parseInt(bounds[1]);
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + bytes.length);
+                exchange.sendResponseHeaders(206, end - start + 1);
+            } else {
+                exchange.sendResponseHeaders(200, bytes.length);
+            }
+
+            write(exchange.getResponseBody(), bytes, start, end + 1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void write(final OutputStream out, final byte[] bytes, final int from, final int to) throws IOException {
+        final int chunk = 64 * 1024;
+        final long nanosPerChunk = TimeUnit.SECONDS.toNanos(1) * chunk / bytesPerSecond;
+        final long started = System.nanoTime();
+
+        for (int position = from, sent = 0; position < to; position += chunk, sent++) {
+            final long due = started + sent * nanosPerChunk;
+            final long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            out.write(bytes, position, Math.min(chunk, to - position));
+        }
+    }
+
+    public static void main(final String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(SegmentedDownloadBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
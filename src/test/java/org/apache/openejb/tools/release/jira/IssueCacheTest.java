@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IssueCacheTest {
+
+    private File dir;
+    private IssueCache cache;
+    private final List<String> requests = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("jira").toFile();
+        cache = new IssueCache(dir);
+    }
+
+    @Test
+    public void queryRevalidatesWithUpdatedIssuesOnly() throws Exception {
+        final String jql = "project = TOMEE AND fixVersion = 8.0.7";
+
+        final List<IssueRecord> first = cache.query(jql, search(record("TOMEE-1", "one"), record("TOMEE-2", "two"), record("TOMEE-3", "three")));
+        assertEquals(Arrays.asList("TOMEE-1", "TOMEE-2", "TOMEE-3"), keys(first));
+        assertEquals(Collections.singletonList(jql), requests);
+
+        // TOMEE-2 was renamed, TOMEE-3 moved to another version and TOMEE-4 added
+        requests.clear();
+        final List<IssueRecord> second = cache.query(jql, jql2 -> {
+            requests.add(jql2);
+            if (jql2.startsWith("(" + jql + ") AND updated >= -")) {
+                return Arrays.asList(record("TOMEE-2", "two, renamed"), record("TOMEE-4", "four"));
+            }
+            if (jql2.startsWith("key in (TOMEE-1, TOMEE-2, TOMEE-3) AND updated >= -")) {
+                return Arrays.asList(record("TOMEE-2", "two, renamed"), record("TOMEE-3", "three"));
+            }
+            throw new AssertionError(jql2);
+        });
+
+        assertEquals(Arrays.asList("TOMEE-1", "TOMEE-2", "TOMEE-4"), keys(second));
+        assertEquals("two, renamed", second.get(1).getSummary());
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(0), requests.get(0).matches(".* AND updated >= -[0-9]+m"));
+
+        // records not refetched are read back from disk
+        assertEquals("one", cache.read("TOMEE-1").getSummary());
+    }
+
+    @Test
+    public void getFetchesUnknownKeysAndRevalidatesKnownOnes() throws Exception {
+        final IssueRecord one = new IssueRecord("TOMEE-1", "one", "Bug", "Resolved", 1000,
+                Arrays.asList("cve"),
+                Collections.singletonList(new IssueRecord.FixVersion(12345, "8.0.7", true)),
+                Collections.singletonList(new IssueRecord.Link("Supercedes", true, "TOMEE-0")));
+
+        final List<String> lookups = new ArrayList<>();
+        final IssueCache.Lookup lookup = (keys, condition) -> {
+            lookups.add(keys + " " + condition);
+            final Map<String, IssueRecord> found = new LinkedHashMap<>();
+            if (condition == null && keys.contains("TOMEE-1")) found.put("TOMEE-1", one);
+            return found;
+        };
+
+        assertEquals(Collections.singleton("TOMEE-1"), cache.get(Arrays.asList("TOMEE-1", "TOMEE-404"), lookup).keySet());
+        assertEquals(Collections.singletonList("[TOMEE-1, TOMEE-404] null"), lookups);
+
+        lookups.clear();
+        final IssueRecord cached = cache.get(Collections.singletonList("TOMEE-1"), lookup).get("TOMEE-1");
+        assertEquals(1, lookups.size());
+        assertTrue(lookups.get(0), lookups.get(0).matches("\\[TOMEE-1\\] updated >= -[0-9]+m"));
+
+        assertEquals("one", cached.getSummary());
+        assertEquals("Bug", cached.getType());
+        assertEquals(1000, cached.getUpdated());
+        assertEquals(Collections.singletonList("cve"), cached.getLabels());
+        assertEquals(12345, cached.getFixVersions().get(0).getId());
+        assertTrue(cached.getFixVersions().get(0).isReleased());
+        assertEquals("TOMEE-0", cached.getLinks().get(0).getTarget());
+    }
+
+    @Test
+    public void deletedIssuesDropOutOfTheScope() throws Exception {
+        final String jql = "project = TOMEE AND fixVersion = 8.0.7";
+        cache.query(jql, search(record("TOMEE-1", "one"), record("TOMEE-2", "two"), record("TOMEE-3", "three")));
+
+        // TOMEE-2 was deleted, so any "key in" naming it is rejected
+        requests.clear();
+        final List<IssueRecord> records = cache.query(jql, jql2 -> {
+            requests.add(jql2);
+            if (jql2.contains("TOMEE-2,") || jql2.contains("TOMEE-2)")) {
+                throw new Exception("An issue with key 'TOMEE-2' does not exist for field 'key'.");
+            }
+            return Collections.emptyList();
+        });
+
+        assertEquals(Arrays.asList("TOMEE-1", "TOMEE-3"), keys(records));
+
+        // the scope query, then "key in" for 1-3, 1, 2-3, 2 and 3
+        assertEquals(6, requests.size());
+    }
+
+    @Test
+    public void failedLookupsDoNotMoveSyncForward() throws Exception {
+        final long synced = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+        try (final DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, "issues/TOMEE-1")))) {
+            out.writeInt(1);
+            out.writeLong(synced);
+            IssueCache.encode(record("TOMEE-1", "one"), out);
+        }
+
+        final List<String> conditions = new ArrayList<>();
+        try {
+            cache.get(Collections.singletonList("TOMEE-1"), (keys, condition) -> {
+                conditions.add(condition);
+                throw new IllegalStateException("503 Service Unavailable");
+            });
+            fail("expected the outage to be reported");
+        } catch (final IllegalStateException e) {
+            assertEquals("503 Service Unavailable", e.getMessage());
+        }
+
+        cache.get(Collections.singletonList("TOMEE-1"), (keys, condition) -> {
+            conditions.add(condition);
+            return Collections.emptyMap();
+        });
+
+        // the second attempt still looks back over the two hours missed
+        assertEquals(2, conditions.size());
+        assertEquals(conditions.get(0), conditions.get(1));
+        assertEquals("updated >= -126m", conditions.get(1));
+
+        // that one succeeded, so the next looks back only minutes
+        cache.get(Collections.singletonList("TOMEE-1"), (keys, condition) -> {
+            conditions.add(condition);
+            return Collections.emptyMap();
+        });
+        assertEquals("updated >= -6m", conditions.get(2));
+    }
+
+    private IssueCache.Search search(final IssueRecord... records) {
+        return jql -> {
+            requests.add(jql);
+            return Arrays.asList(records);
+        };
+    }
+
+    private static IssueRecord record(final String key, final String summary) {
+        return new IssueRecord(key, summary, "Bug", "Resolved", 0,
+                Collections.<String>emptyList(), Collections.<IssueRecord.FixVersion>emptyList(), Collections.<IssueRecord.Link>emptyList());
+    }
+
+    private static List<String> keys(final Collection<IssueRecord> records) {
+        return records.stream().map(IssueRecord::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.codehaus.swizzle.jira.Issue;
+import org.codehaus.swizzle.jira.Jira;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IssueLoaderTest {
+
+    @Test
+    public void batchesKeysAndIsolatesMissingOnes() throws Exception {
+        final List<String> searches = new CopyOnWriteArrayList<>();
+
+        final Jira jira = new Jira("http://localhost/jira/rpc/xmlrpc") {
+            @Override
+            public List<Issue> getIssuesFromJqlSearch(final String jql, final int max) throws Exception {
+                searches.add(jql);
+                if (jql.contains("TOMEE-13")) throw new Exception("An issue with key 'TOMEE-13' does not exist");
+
+                final List<Issue> issues = new ArrayList<>();
+                for (final String key : jql.replaceAll("key in \\((.*)\\)", "$1").split(", ")) {
+                    final Issue issue = new Issue();
+                    issue.setKey(key);
+                    issues.add(issue);
+                }
+                return issues;
+            }
+        };
+
+        final List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            keys.add("TOMEE-" + i);
+        }
+        keys.add("TOMEE-1");
+
+        final Map<String, Issue> issues = new IssueLoader(jira, 8, 2).load(keys);
+
+        final List<String> expected = new ArrayList<>(keys.subList(0, 20));
+        expected.remove("TOMEE-13");
+        assertEquals(expected, new ArrayList<>(issues.keySet()));
+
+        assertTrue(searches.contains("key in (TOMEE-1, TOMEE-2, TOMEE-3, TOMEE-4, TOMEE-5, TOMEE-6, TOMEE-7, TOMEE-8)"));
+        assertTrue(searches.contains("key in (TOMEE-17, TOMEE-18, TOMEE-19, TOMEE-20)"));
+        assertTrue(searches.contains("key in (TOMEE-14)"));
+
+        // three batches, plus six searches bisecting the one with TOMEE-13
+        assertEquals(9, searches.size());
+
+        assertEquals(Collections.emptyMap(), new IssueLoader(jira).load(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void otherFailuresAreNotMistakenForMissingIssues() throws Exception {
+        final List<String> searches = new CopyOnWriteArrayList<>();
+
+        final Jira jira = new Jira("http://localhost/jira/rpc/xmlrpc") {
+            @Override
+            public List<Issue> getIssuesFromJqlSearch(final String jql, final int max) throws Exception {
+                searches.add(jql);
+                throw new Exception("503 Service Unavailable");
+            }
+        };
+
+        final List<String> keys = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            keys.add("TOMEE-" + i);
+        }
+
+        try {
+            new IssueLoader(jira, 8, 1).load(keys);
+            fail("expected the outage to be reported");
+        } catch (final IllegalStateException e) {
+            assertEquals("503 Service Unavailable", e.getCause().getMessage());
+        }
+
+        // no bisecting
+        assertEquals(1, searches.size());
+    }
+}
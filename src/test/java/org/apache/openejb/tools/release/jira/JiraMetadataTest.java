@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.jira;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JiraMetadataTest {
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private String dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = System.getProperty("release-tools.jira.dir");
+        System.setProperty("release-tools.jira.dir", Files.createTempDirectory("jira").toString());
+    }
+
+    @After
+    public void tearDown() {
+        if (dir == null) System.clearProperty("release-tools.jira.dir");
+        else System.setProperty("release-tools.jira.dir", dir);
+    }
+
+    @Test
+    public void loadIsReadBackFromDisk() throws Exception {
+        final List<String> projects = Arrays.asList("TOMEE", "OPENEJB");
+
+        final JiraMetadata first = JiraMetadata.load("test", projects, source());
+        assertEquals(1, fetches.get());
+
+        final JiraMetadata second = JiraMetadata.load("test", projects, source());
+        assertEquals(1, fetches.get());
+
+        assertEquals(first.getLoaded(), second.getLoaded());
+        assertEquals(Long.valueOf(1), second.getIssueType("Bug"));
+        assertEquals(Long.valueOf(4), second.getIssueType("Dependency upgrade"));
+        assertEquals(12345, second.getVersion("TOMEE", "8.0.7").getId());
+        assertEquals(true, second.getVersion("TOMEE", "8.0.7").isReleased());
+        assertEquals("4.7.5, rc", second.getVersion("OPENEJB", "4.7.5, rc").getName());
+        assertEquals(Collections.singleton("Supercedes"), second.getLinkTypes());
+        assertNull(second.getVersion("TOMEE", "9.0.0"));
+
+        // a project not saved yet means fetching again
+        JiraMetadata.load("test", Arrays.asList("TOMEE", "OPENEJB", "TOMEEJAVA"), source());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void expiredMetadataIsFetchedAgain() throws Exception {
+        JiraMetadata.load("test", Collections.singletonList("TOMEE"), source());
+
+        System.setProperty("release-tools.jira.metadata.hours", "0");
+        try {
+            JiraMetadata.load("test", Collections.singletonList("TOMEE"), source());
+        } finally {
+            System.clearProperty("release-tools.jira.metadata.hours");
+        }
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void namesAreLookedUpOneByOne() throws Exception {
+        final Map<String, Long> ids = new LinkedHashMap<>();
+        ids.put("Bug", 1L);
+        ids.put("Task", 3L);
+
+        final JiraMetadata metadata = JiraMetadata.load("names", Collections.<String>emptyList(),
+                JiraMetadata.of(Arrays.asList("Bug", "Wish", "Task"), ids::get));
+
+        assertEquals(ids, metadata.getIssueTypes());
+    }
+
+    private JiraMetadata.Source source() {
+        return new JiraMetadata.Source() {
+            @Override
+            public Map<String, Long> issueTypes() {
+                fetches.incrementAndGet();
+
+                final Map<String, Long> types = new LinkedHashMap<>();
+                types.put("Bug", 1L);
+                types.put("Improvement", 2L);
+                types.put("Task", 3L);
+                types.put("Dependency upgrade", 4L);
+                return types;
+            }
+
+            @Override
+            public List<IssueRecord.FixVersion> versions(final String project) {
+                if ("TOMEE".equals(project)) {
+                    return Arrays.asList(new IssueRecord.FixVersion(12345, "8.0.7", true),
+                            new IssueRecord.FixVersion(12346, "8.0.8", false));
+                }
+                return Collections.singletonList(new IssueRecord.FixVersion(222, "4.7.5, rc", false));
+            }
+
+            @Override
+            public Collection<String> linkTypes() {
+                return Collections.singletonList("Supercedes");
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.util.IO;
+import org.apache.openejb.tools.release.util.StreamConsumer;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkedLogTest {
+
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+
+    @Test
+    public void chunksAreMergedInOrderAndRetried() throws Exception {
+        final List<Long> revisions = new ArrayList<>();
+        new ChunkedLog(fake("201:250"), 50, 4, 3).read("repo", 1, 1000, true, commit -> revisions.add(commit.getRevision()));
+
+        assertEquals(1000, revisions.size());
+        for (int i = 0; i < revisions.size(); i++) {
+            assertEquals(i + 1, (long) revisions.get(i));
+        }
+
+        assertEquals(20, requests.size());
+        assertEquals(2, requests.get("201:250").get());
+        assertTrue("peak " + peak, peak.get() <= 4);
+    }
+
+    @Test(expected = SvnException.class)
+    public void givesUpAfterTheLastAttempt() throws Exception {
+        new ChunkedLog(fake("1:50"), 50, 2, 1).read("repo", 1, 100, true, commit -> {
+        });
+    }
+
+    /**
+     * Answers each chunk after a random delay, failing the first request
+     * for the given range
+     */
+    private Svn fake(final String failing) {
+        return (Svn) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Svn.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "session":
+                    return proxy;
+                case "log":
+                    final String revisions = (String) args[1];
+                    final int attempt = requests.computeIfAbsent(revisions, k -> new AtomicInteger()).incrementAndGet();
+
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextInt(10));
+                    } finally {
+                        running.decrementAndGet();
+                    }
+
+                    if (revisions.equals(failing) && attempt == 1) throw new SvnException("connection reset");
+                    return ((StreamConsumer<?>) args[3]).consume(IO.read(CommitStoreTest.log(revisions)));
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}
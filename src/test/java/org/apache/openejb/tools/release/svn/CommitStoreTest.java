@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.Commit;
+import org.apache.openejb.tools.release.util.IO;
+import org.apache.openejb.tools.release.util.StreamConsumer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+
+public class CommitStoreTest {
+
+    private static final long START = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The revision the fake url was added in
+     */
+    private static final long FIRST = 30;
+
+    private final List<String> requests = new ArrayList<>();
+    private long head;
+    private CommitStore store;
+    private Svn svn;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new CommitStore(Files.createTempDirectory("commits").toFile());
+        svn = fake();
+        head = 100;
+    }
+
+    @Test
+    public void fetchesOnlyNewRevisions() throws Exception {
+        assertEquals(range(51, 100), revisions(store.from(svn, "repo", 51)));
+        assertEquals(Collections.singletonList("51:100"), requests);
+
+        head = 120;
+        assertEquals(range(51, 120), revisions(store.from(svn, "repo", 51)));
+        assertEquals(Arrays.asList("51:100", "101:120"), requests);
+
+        assertEquals(range(51, 120), revisions(store.from(svn, "repo", 51)));
+        assertEquals(2, requests.size());
+
+        assertEquals(70, store.log("repo").size());
+    }
+
+    @Test
+    public void extendsBackwards() throws Exception {
+        revisions(store.from(svn, "repo", 51));
+        assertEquals(range(41, 100), revisions(store.from(svn, "repo", 41)));
+        assertEquals(Arrays.asList("51:100", "41:50"), requests);
+
+        assertEquals(range(61, 70), revisions(store.log("repo").byRevision(61, 70)));
+    }
+
+    @Test
+    public void byDate() throws Exception {
+        final Date since = new Date(START + 80 * HOUR);
+        final List<Commit> commits = store.since(svn, "repo", since).collect(Collectors.toList());
+
+        assertEquals(range(80, 100), commits.stream().map(Commit::getRevision).collect(Collectors.toList()));
+        assertEquals("author80", commits.get(0).getAuthor());
+        assertEquals("TOMEE-80 change", commits.get(0).getMessage());
+        assertEquals("/trunk/file80", commits.get(0).getPaths().get(0).getPath());
+
+        final Date to = new Date(START + 90 * HOUR);
+        assertEquals(range(85, 90), revisions(store.log("repo").byDate(new Date(START + 85 * HOUR), to)));
+
+        revisions(store.since(svn, "repo", since));
+        assertEquals(Collections.singletonList("80:100"), requests);
+    }
+
+    @Test
+    public void datesAreReadFromTheIndex() throws Exception {
+        final Date since = new Date(START + 80 * HOUR);
+        final long[] dates = store.datesSince(svn, "repo", since).toArray();
+
+        assertEquals(21, dates.length);
+        assertEquals(START + 80 * HOUR, dates[0]);
+        assertEquals(START + 100 * HOUR, dates[20]);
+
+        assertEquals(6, store.log("repo").dates(new Date(START + 85 * HOUR), new Date(START + 90 * HOUR)).count());
+        assertEquals(Collections.singletonList("80:100"), requests);
+    }
+
+    @Test
+    public void updatesStoredMessages() throws Exception {
+        revisions(store.from(svn, "repo", 51));
+        revisions(store.from(svn, "other", 91));
+
+        store.update(95, "TOMEE-95 change\nTOMEE-96: reviewed");
+        store.update(10, "never fetched");
+
+        for (final String url : Arrays.asList("repo", "other")) {
+            try (final Stream<Commit> commits = store.log(url).byRevision(94, 96)) {
+                assertEquals(Arrays.asList("TOMEE-94 change", "TOMEE-95 change\nTOMEE-96: reviewed", "TOMEE-96 change"),
+                        commits.map(Commit::getMessage).collect(Collectors.toList()));
+            }
+        }
+
+        assertEquals(50, store.log("repo").size());
+        assertEquals(range(10, 100), revisions(store.from(svn, "repo", 10)));
+        try (final Stream<Commit> commits = store.log("repo").byRevision(10, 10)) {
+            assertEquals("TOMEE-10 change", commits.findFirst().get().getMessage());
+        }
+    }
+
+    @Test
+    public void datesBeforeTheUrlExistedStartFromItsFirstRevision() throws Exception {
+        assertEquals(range(30, 100), revisions(store.since(svn, "repo", new Date(START))));
+        assertEquals(Arrays.asList("first", "30:100"), requests);
+    }
+
+    private static List<Long> range(final long from, final long to) {
+        final List<Long> list = new ArrayList<>();
+        for (long i = from; i <= to; i++) list.add(i);
+        return list;
+    }
+
+    private static List<Long> revisions(final Stream<Commit> commits) {
+        try (final Stream<Commit> stream = commits) {
+            return stream.map(Commit::getRevision).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * A repository with one commit an hour, answering only what the store asks
+     */
+    private Svn fake() {
+        return (Svn) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Svn.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "head":
+                    return head;
+                case "revision":
+                    final long revision = Math.min(head, (((Date) args[1]).getTime() - START) / HOUR);
+                    if (revision < FIRST) throw new SvnException("svn: E195012: Unable to find repository location for 'repo'");
+                    return revision;
+                case "first":
+                    requests.add("first");
+                    return FIRST;
+                case "session":
+                    return proxy;
+                case "close":
+                    return null;
+                case "log":
+                    final String revisions = (String) args[1];
+                    requests.add(revisions);
+                    if (args.length == 3) return IO.read(log(revisions));
+                    return ((StreamConsumer<?>) args[3]).consume(IO.read(log(revisions)));
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    static String log(final String revisions) {
+        final String[] range = revisions.split(":");
+        final long a = Long.parseLong(range[0]);
+        final long b = Long.parseLong(range[1]);
+
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<log>\n");
+        for (long i = Math.max(1, Math.min(a, b)); i <= Math.max(a, b); i++) {
+            xml.append("<logentry revision=\"").append(i).append("\">")
+                    .append("<author>author").append(i).append("</author>")
+                    .append("<date>").append(Instant.ofEpochMilli(START + i * HOUR)).append("</date>")
+                    .append("<paths><path kind=\"file\" action=\"M\">/trunk/file").append(i).append("</path></paths>")
+                    .append("<msg>TOMEE-").append(i).append(" change</msg>")
+                    .append("</logentry>\n");
+        }
+        return xml.append("</log>\n").toString();
+    }
+}
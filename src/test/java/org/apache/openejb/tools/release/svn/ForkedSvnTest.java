@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.svn;
+
+import org.apache.openejb.tools.release.util.IO;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs against a local file:// repository, so the svn command line
+ * client, svnadmin and svnmucc must be installed or the tests are skipped.
+ */
+public class ForkedSvnTest {
+
+    private File base;
+    private String repository;
+    private ForkedSvn svn;
+    private ByteArrayOutputStream printed;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(installed("svn") && installed("svnadmin") && installed("svnmucc"));
+
+        base = Files.createTempDirectory("svn").toFile();
+        final File repo = new File(base, "repo");
+        assertEquals(0, new ProcessBuilder("svnadmin", "create", repo.getAbsolutePath()).inheritIO().start().waitFor());
+
+        repository = "file://" + repo.getAbsolutePath() + "/";
+        printed = new ByteArrayOutputStream();
+        svn = new ForkedSvn(new PrintStream(printed));
+    }
+
+    @Test
+    public void transactionCommitsOnceWithoutWorkingCopy() throws Exception {
+        final File work = new File(base, "work");
+        assertTrue(work.mkdirs());
+        final File zip = write(new File(work, "apache-tomee-8.0.7-plus.zip"), "zip");
+        final File sha = write(new File(work, "apache-tomee-8.0.7-plus.zip.sha512"), "sha");
+
+        svn.transaction("stage", repository, Arrays.asList(
+                "mkdir", "staging-1",
+                "mkdir", "staging-1/tomee-8.0.7",
+                "put", zip.getAbsolutePath(), "staging-1/tomee-8.0.7/" + zip.getName(),
+                "put", sha.getAbsolutePath(), "staging-1/tomee-8.0.7/" + sha.getName()));
+
+        assertEquals(1, svn.head(repository));
+        assertEquals(Arrays.asList(zip.getName(), sha.getName()), svn.list(repository + "staging-1/tomee-8.0.7/"));
+        assertFalse(new File(work, ".svn").exists());
+        assertTrue(svn.exists(repository + "staging-1/"));
+        assertFalse(svn.exists(repository + "staging-2/"));
+        assertEquals(5, svn.getProcesses());
+    }
+
+    @Test
+    public void addReportsEachFile() throws Exception {
+        final File checkout = new File(base, "checkout");
+        svn.checkout(repository, checkout, Svn.Depth.INFINITY);
+
+        final File a = write(new File(checkout, "a.zip"), "a");
+        final File b = write(new File(checkout, "b.zip"), "b");
+        final File missing = new File(checkout, "missing.zip");
+
+        assertEquals(Svn.Status.ADDED, svn.add(Arrays.asList(a)).get(0).getStatus());
+
+        final List<Svn.Result> results = svn.add(Arrays.asList(a, b, missing));
+        assertEquals(Svn.Status.VERSIONED, results.get(0).getStatus());
+        assertEquals(Svn.Status.ADDED, results.get(1).getStatus());
+        assertEquals(Svn.Status.FAILED, results.get(2).getStatus());
+    }
+
+    @Test
+    public void branchAndTag() throws Exception {
+        svn.mkdir("layout", Arrays.asList(repository + "trunk", repository + "branches", repository + "tags"));
+
+        final File checkout = new File(base, "trunk");
+        svn.checkout(repository + "trunk", checkout, Svn.Depth.INFINITY);
+        svn.add(Collections.singletonList(write(new File(checkout, "pom.xml"), "<project/>")));
+        svn.commit("TOMEE-1 initial pom", checkout);
+
+        svn.copy("branch", repository + "trunk", repository + "branches/tomee-8.0.7");
+        assertEquals(Collections.singletonList("pom.xml"), svn.list(repository + "branches/tomee-8.0.7"));
+
+        svn.delete("recreate", repository + "branches/tomee-8.0.7");
+        assertFalse(svn.exists(repository + "branches/tomee-8.0.7"));
+
+        try (final InputStream in = svn.log(repository + "trunk", "HEAD:1", true)) {
+            final String log = IO.slurp(in);
+            assertTrue(log, log.contains("<msg>TOMEE-1 initial pom</msg>"));
+            assertTrue(log, log.contains("/trunk/pom.xml"));
+        }
+    }
+
+    @Test
+    public void probesDoNotEchoExpectedFailures() throws Exception {
+        assertFalse(svn.exists(repository + "missing"));
+        assertEquals("", printed.toString());
+
+        try {
+            svn.list(repository + "missing");
+            fail("expected the missing url to be reported");
+        } catch (final SvnException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("E170000"));
+        }
+        assertEquals("", printed.toString());
+    }
+
+    @Test(expected = SvnException.class)
+    public void failuresThrow() throws Exception {
+        svn.delete("missing", repository + "missing");
+    }
+
+    @Test(expected = IOException.class)
+    public void logFailureIsReported() throws Exception {
+        try (final InputStream in = svn.log(repository + "missing", "HEAD:1", false)) {
+            IO.slurp(in);
+        }
+    }
+
+    private static File write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes());
+        return file;
+    }
+
+    private static boolean installed(final String program) {
+        try {
+            final Process process = new ProcessBuilder(program, "--version").redirectErrorStream(true).start();
+            try (final InputStream in = process.getInputStream()) {
+                while (in.read() != -1) {
+                    // drain
+                }
+            }
+            return process.waitFor() == 0;
+        } catch (final IOException | InterruptedException e) {
+            return false;
+        }
+    }
+}
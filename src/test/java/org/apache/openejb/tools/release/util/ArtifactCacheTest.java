@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ArtifactCacheTest {
+
+    private static final String HELLO_SHA1 = "f572d396fae9206628714fb2ce00f72e94f2258f";
+
+    private File root;
+    private ArtifactCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("cache").toFile();
+        cache = new ArtifactCache(root, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void contentIsFetchedOnceAndFoundByItsSha1() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final ArtifactCache.Fetch fetch = file -> {
+            fetches.incrementAndGet();
+            IO.writeString(file, "hello");
+        };
+
+        final File first = cache.resolve("central/a/hello.txt", HELLO_SHA1, fetch);
+        assertEquals("hello\n", IO.slurp(first));
+
+        // the same bytes staged under another repository are not fetched again
+        final File second = cache.resolve("staging/a/hello.txt", HELLO_SHA1.toUpperCase() + "  hello.txt", fetch);
+        assertEquals(first, second);
+        assertEquals(1, fetches.get());
+
+        // without a sha1 the key finds what was stored under it
+        assertEquals(first, cache.lookup("staging/a/hello.txt"));
+        assertNull(cache.lookup("staging/b/hello.txt"));
+    }
+
+    @Test
+    public void mismatchedContentIsNotCached() throws Exception {
+        try {
+            cache.resolve("central/a/hello.txt", HELLO_SHA1, file -> IO.writeString(file, "tampered"));
+            fail("expected the checksum mismatch to be reported");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Checksum mismatch for central/a/hello.txt"));
+        }
+
+        assertNull(cache.get(HELLO_SHA1));
+        assertNull(cache.lookup("central/a/hello.txt"));
+        assertEquals(0, new File(root, "tmp").list().length);
+    }
+
+    @Test
+    public void putLinksFilesOnTheSameFileSystem() throws Exception {
+        final File file = new File(root, "hello.txt");
+        IO.writeString(file, "hello");
+
+        final File object = cache.put("central/a/hello.txt", file, null);
+
+        assertEquals(HELLO_SHA1, object.getName());
+        assertTrue(Files.isSameFile(file.toPath(), object.toPath()));
+        assertEquals(object, cache.lookup("central/a/hello.txt"));
+        assertEquals(0, new File(root, "tmp").list().length);
+    }
+
+    @Test
+    public void copiesAreReplacedAtomically() throws Exception {
+        final File object = cache.resolve("central/a/hello.txt", null, file -> IO.writeString(file, "hello"));
+
+        final File target = new File(root, "copy.txt");
+        IO.writeString(target, "old");
+        cache.copy(object, target);
+
+        assertEquals("hello\n", IO.slurp(target));
+        assertFalse(new File(root, "copy.txt.part").exists());
+        assertFalse(Files.isSameFile(object.toPath(), target.toPath()));
+    }
+
+    @Test
+    public void evictionDropsTheLeastRecentlyUsedObjects() throws Exception {
+        final ArtifactCache small = new ArtifactCache(root, 15);
+
+        final File older = small.resolve("a", null, file -> IO.writeString(file, "older file"));
+        final File newer = small.resolve("b", null, file -> IO.writeString(file, "newer file"));
+
+        // both were just used, so the grace period keeps them
+        assertTrue(older.isFile());
+        assertTrue(newer.isFile());
+
+        final long hourAgo = System.currentTimeMillis() - 3_600_000;
+        small.stamp(older.getName()).setLastModified(hourAgo - 1000);
+        small.stamp(newer.getName()).setLastModified(hourAgo);
+        small.evict();
+
+        assertFalse(older.isFile());
+        assertFalse(small.stamp(older.getName()).exists());
+        assertTrue(newer.isFile());
+    }
+
+    @Test
+    public void usingALinkedObjectLeavesTheOriginalFileAlone() throws Exception {
+        final File file = new File(root, "hello.txt");
+        IO.writeString(file, "hello");
+        final long staged = System.currentTimeMillis() - 3_600_000;
+        file.setLastModified(staged);
+
+        final File object = cache.put("central/a/hello.txt", file, null);
+        assertEquals(object, cache.get(HELLO_SHA1));
+        assertEquals(object, cache.lookup("central/a/hello.txt"));
+
+        assertEquals(staged / 1000, file.lastModified() / 1000);
+        assertTrue(cache.stamp(HELLO_SHA1).lastModified() > staged);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class DigestCacheTest {
+
+    private static final String HELLO_SHA1 = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    private File dir;
+    private DigestCache cache;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("digests").toFile();
+        cache = new DigestCache(new File(dir, "cache"));
+        file = new File(dir, "hello.txt");
+        write("hello");
+    }
+
+    @Test
+    public void unchangedFilesAreNotHashedAgain() throws Exception {
+        assertEquals(HELLO_SHA1, cache.digest(file, Digests.SHA1).get(Digests.SHA1));
+
+        // same size, same modification time, same inode: the entry is trusted
+        final FileTime modified = Files.getLastModifiedTime(file.toPath());
+        write("jello");
+        Files.setLastModifiedTime(file.toPath(), modified);
+        assertEquals(HELLO_SHA1, cache.digest(file, Digests.SHA1).get(Digests.SHA1));
+
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(modified.toMillis() + 1000));
+        assertEquals(sha1("jello"), cache.digest(file, Digests.SHA1).get(Digests.SHA1));
+    }
+
+    @Test
+    public void recordedDigestsAreReturnedWithoutHashing() throws Exception {
+        cache.put(file, Collections.singletonMap(Digests.SHA1, "recorded"));
+
+        assertEquals("recorded", cache.digest(file, Digests.SHA1).get(Digests.SHA1));
+
+        // an algorithm that was never recorded means hashing the file
+        final Map<String, String> both = cache.digest(file, Digests.SHA1, Digests.SHA256);
+        assertEquals(HELLO_SHA1, both.get(Digests.SHA1));
+        assertEquals(2, both.size());
+    }
+
+    @Test
+    public void entriesAreReplacedWithoutLeavingTemporaryFiles() throws Exception {
+        cache.digest(file, Digests.SHA1);
+        cache.digest(file, Digests.SHA256);
+        cache.put(file, Collections.singletonMap(Digests.SHA512, "recorded"));
+
+        assertEquals(1, new File(dir, "cache").list().length);
+        assertEquals("recorded", cache.digest(file, Digests.SHA1, Digests.SHA256, Digests.SHA512).get(Digests.SHA512));
+    }
+
+    private void write(final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String sha1(final String content) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        final Digests digests = Digests.of(Digests.SHA1);
+        digests.update(bytes, 0, bytes.length);
+        return digests.hex().get(Digests.SHA1);
+    }
+}
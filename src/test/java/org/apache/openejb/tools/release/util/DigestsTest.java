@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Test;
+import org.tomitribe.util.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DigestsTest {
+
+    /**
+     * Larger than the read buffer and not a multiple of it
+     */
+    private static final byte[] CONTENT = new byte[(int) (2.5 * 1024 * 1024) + 7];
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @Test
+    public void onePassMatchesEachAlgorithmOnItsOwn() throws Exception {
+        final File file = File.createTempFile("digests", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), CONTENT);
+
+        final Map<String, String> digests = Digests.digest(file, Digests.SHA1, Digests.SHA256, Digests.SHA512);
+
+        assertEquals(Arrays.asList(Digests.SHA1, Digests.SHA256, Digests.SHA512), Arrays.asList(digests.keySet().toArray()));
+        for (final String algorithm : digests.keySet()) {
+            assertEquals(algorithm, expected(algorithm, CONTENT), digests.get(algorithm));
+        }
+    }
+
+    @Test
+    public void copyDigestsWhatItWrites() throws Exception {
+        final Digests digests = Digests.of(Digests.SHA256);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(CONTENT.length, digests.copy(new ByteArrayInputStream(CONTENT), out));
+        assertArrayEquals(CONTENT, out.toByteArray());
+        assertEquals(expected(Digests.SHA256, CONTENT), digests.hex().get(Digests.SHA256));
+    }
+
+    @Test
+    public void hexResetsTheDigests() throws Exception {
+        final Digests digests = Digests.of(Digests.SHA1);
+        digests.update(CONTENT, 0, 100);
+        digests.hex();
+
+        digests.update(CONTENT, 100, 50);
+        assertEquals(expected(Digests.SHA1, Arrays.copyOfRange(CONTENT, 100, 150)), digests.hex().get(Digests.SHA1));
+    }
+
+    private static String expected(final String algorithm, final byte[] bytes) throws Exception {
+        return Hex.toString(MessageDigest.getInstance(algorithm).digest(bytes));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs sh, so these assume a Unix shell is installed
+ */
+public class ExecTest {
+
+    @Test
+    public void startCapturesOutputAndExitCode() throws Exception {
+        final Exec.Result result = Exec.join(Exec.call("sh", "-c", "echo out; echo err >&2; exit 3").start());
+
+        assertEquals(3, result.getExitCode());
+        assertFalse(result.isSuccess());
+        assertEquals("out\n", result.getOutput());
+        assertEquals("err\n", result.getError());
+    }
+
+    @Test
+    public void processesBeyondTheLimitWaitInLine() throws Exception {
+        final int processes = 2 * Exec.getConcurrency();
+
+        final long start = System.nanoTime();
+        final List<CompletableFuture<Exec.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < processes; i++) {
+            futures.add(Exec.call("sh", "-c", "sleep 0.3").start());
+        }
+        for (final CompletableFuture<Exec.Result> future : futures) {
+            assertTrue(Exec.join(future).isSuccess());
+        }
+
+        // two rounds at least, as only half of them may run at once
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 550);
+    }
+
+    @Test
+    public void streamFailsWhenTheProcessDoes() throws Exception {
+        assertEquals("a\nb\n", Exec.join(Exec.call("sh", "-c", "echo a; echo b").stream(IO::slurp)));
+
+        try {
+            Exec.join(Exec.call("sh", "-c", "echo a; exit 2").error(new ByteArrayOutputStream()).stream(IO::slurp));
+            fail("expected the exit code to be reported");
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("exited with 2"));
+        }
+    }
+
+    @Test
+    public void checkedReadsFailAtTheEnd() throws Exception {
+        try (final InputStream in = Exec.call("sh", "-c", "echo a; exit 1").error(new ByteArrayOutputStream()).check().read()) {
+            IO.slurp(in);
+            fail("expected the exit code to be reported");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith("exited with 1"));
+        }
+
+        try (final InputStream in = Exec.call("sh", "-c", "echo a; exit 1").error(new ByteArrayOutputStream()).read()) {
+            assertEquals("a\n", IO.slurp(in));
+        }
+    }
+
+    @Test
+    public void closingReadsEarlyFreesTheirSlot() throws Exception {
+        // more than the limit, so this hangs if a closed read kept its slot
+        for (int i = 0; i <= Exec.getConcurrency(); i++) {
+            try (final InputStream in = Exec.call("yes").read()) {
+                assertEquals('y', in.read());
+            }
+        }
+        assertTrue(Exec.join(Exec.call("true").start()).isSuccess());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class IOTest {
+
+    @Test
+    public void replaceAtomicallyLeavesNoTemporaryFiles() throws Exception {
+        final File dir = Files.createTempDirectory("io").toFile();
+        final File target = new File(new File(dir, "sub"), "target.txt");
+
+        IO.replaceAtomically(target, out -> out.write("one".getBytes(StandardCharsets.UTF_8)));
+        IO.replaceAtomically(target, out -> out.write("two".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("two", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1, target.getParentFile().list().length);
+    }
+
+    @Test
+    public void failedWritesKeepTheOldContent() throws Exception {
+        final File dir = Files.createTempDirectory("io").toFile();
+        final File target = new File(dir, "target.txt");
+        Files.write(target.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            IO.replaceAtomically(target, out -> {
+                out.write("half".getBytes(StandardCharsets.UTF_8));
+                throw new IOException("disk full");
+            });
+            fail("expected the failure to be rethrown");
+        } catch (final IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+
+        assertEquals("old", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1, dir.list().length);
+    }
+
+    @Test
+    public void stringsAreReadBackAsWritten() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            IO.writeString(out, "TOMEE-1 caf\u00e9");
+            IO.writeString(out, null);
+            IO.writeString(out, "");
+        }
+
+        try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals("TOMEE-1 caf\u00e9", IO.readString(in));
+            assertNull(IO.readString(in));
+            assertEquals("", IO.readString(in));
+        }
+    }
+
+    @Test
+    public void hashNamesAreTheSha1OfTheKey() {
+        assertEquals("aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d", Digests.hashName("hello"));
+        assertFalse(Digests.hashName("hello").equals(Digests.hashName("hello ")));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ListingCacheTest {
+
+    private static final String KEY = "application/xml https://repository.apache.org/content/groups/public/maven-metadata.xml";
+
+    private File dir;
+    private ListingCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("listings").toFile();
+        cache = new ListingCache(dir);
+    }
+
+    @Test
+    public void bodiesAreKeptWithTheirValidators() throws Exception {
+        assertNull(cache.get(KEY));
+
+        cache.put(KEY, "\"abc\"", "Sat, 17 Oct 2026 10:00:00 GMT", bytes("<metadata/>"));
+
+        final ListingCache.Entry entry = cache.get(KEY);
+        assertEquals("\"abc\"", entry.getEtag());
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", entry.getLastModified());
+        assertArrayEquals(bytes("<metadata/>"), entry.getContent());
+
+        cache.put(KEY, "\"def\"", null, bytes("<metadata></metadata>"));
+
+        final ListingCache.Entry replaced = cache.get(KEY);
+        assertEquals("\"def\"", replaced.getEtag());
+        assertNull(replaced.getLastModified());
+        assertArrayEquals(bytes("<metadata></metadata>"), replaced.getContent());
+        assertEquals(2, dir.list().length);
+    }
+
+    @Test
+    public void responsesWithoutValidatorsAreNotKept() throws Exception {
+        cache.put(KEY, null, null, bytes("<metadata/>"));
+
+        assertNull(cache.get(KEY));
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    public void keysAreNotConfused() throws Exception {
+        cache.put(KEY, "\"abc\"", null, bytes("<metadata/>"));
+
+        assertNull(cache.get("text/html https://repository.apache.org/content/groups/public/maven-metadata.xml"));
+    }
+
+    private static byte[] bytes(final String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PipeTest {
+
+    private final byte[] bytes = new byte[3 * Pipe.BUFFER_SIZE + 17];
+
+    {
+        new Random(42).nextBytes(bytes);
+    }
+
+    @Test
+    public void copiesToStreams() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, Pipe.copy(new ByteArrayInputStream(bytes), out));
+        assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    @Test
+    public void copiesToFilesThroughTheirChannel() throws Exception {
+        final File file = tmp();
+        try (final FileOutputStream out = new FileOutputStream(file)) {
+            assertEquals(bytes.length, Pipe.copy(new ByteArrayInputStream(bytes), out));
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void appendsAtTheChannelPosition() throws Exception {
+        final File source = tmp();
+        Files.write(source.toPath(), bytes);
+
+        final File file = tmp();
+        Files.write(file.toPath(), "head".getBytes(StandardCharsets.UTF_8));
+
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             final FileInputStream in = new FileInputStream(source)) {
+            assertEquals(bytes.length, Pipe.copy(in, channel));
+            assertEquals(4 + bytes.length, channel.position());
+
+            assertEquals(3, Pipe.copy(new ByteArrayInputStream("end".getBytes(StandardCharsets.UTF_8)), channel));
+        }
+
+        final byte[] written = Files.readAllBytes(file.toPath());
+        assertEquals(4 + bytes.length + 3, written.length);
+        assertEquals("head", new String(written, 0, 4, StandardCharsets.UTF_8));
+        assertEquals("end", new String(written, written.length - 3, 3, StandardCharsets.UTF_8));
+        assertArrayEquals(bytes, Arrays.copyOfRange(written, 4, 4 + bytes.length));
+    }
+
+    @Test
+    public void processOutputGoesToAFile() throws Exception {
+        final File file = tmp();
+
+        final Exec.Result result = Exec.join(Exec.call("sh", "-c", "seq 1 20000").output(file).start());
+
+        assertTrue(result.isSuccess());
+        assertEquals("", result.getOutput());
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(20000, lines.size());
+        assertEquals("20000", lines.get(19999));
+    }
+
+    private static File tmp() throws Exception {
+        final File file = File.createTempFile("pipe", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.tools.release.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelineTest {
+
+    @Test
+    public void itemsFlowThroughEveryStage() throws Exception {
+        final Pipeline.Result<String> result = Pipeline.<String>start()
+                .<String>then("split", 2, (word, emit) -> word.chars().forEach(c -> emit.accept(String.valueOf((char) c))))
+                .<String>then("upper", 3, (letter, emit) -> emit.accept(letter.toUpperCase()))
+                .run(Arrays.asList("ab", "cde", "f"));
+
+        final List<String> outputs = new ArrayList<>(result.getOutputs());
+        Collections.sort(outputs);
+        assertEquals(Arrays.asList("A", "B", "C", "D", "E", "F"), outputs);
+
+        assertEquals(2, result.getStages().size());
+        assertEquals(3, result.getStages().get(0).getItems());
+        assertEquals(6, result.getStages().get(1).getItems());
+    }
+
+    @Test
+    public void theFirstFailureIsRethrown() throws Exception {
+        final Pipeline<String, String> pipeline = Pipeline.<String>start()
+                .<String>then("check", 2, (item, emit) -> {
+                    if (item.equals("bad")) throw new IOException("bad item");
+                    emit.accept(item);
+                })
+                .then("slow", 1, 1, (item, emit) -> {
+                    Thread.sleep(20);
+                    emit.accept(item);
+                });
+
+        try {
+            pipeline.run(Arrays.asList("a", "b", "bad", "c", "d", "e", "f"));
+            fail("expected the failure to be rethrown");
+        } catch (final IOException e) {
+            assertEquals("bad item", e.getMessage());
+        }
+    }
+
+    @Test
+    public void timeBlockedDownstreamIsNotBusy() throws Exception {
+        final List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) items.add(i);
+
+        // the first stage is instant but spends most of the run waiting for room in the second
+        final Pipeline.Result<Integer> result = Pipeline.<Integer>start()
+                .<Integer>then("fast", 1, 1, (item, emit) -> emit.accept(item))
+                .<Integer>then("slow", 1, 1, (item, emit) -> {
+                    Thread.sleep(30);
+                    emit.accept(item);
+                })
+                .run(items);
+
+        assertEquals(10, result.getOutputs().size());
+
+        final Pipeline.StageStats fast = result.getStages().get(0);
+        final Pipeline.StageStats slow = result.getStages().get(1);
+        assertTrue(fast.toString(), fast.getUtilization() < 0.2);
+        assertTrue(slow.toString(), slow.getUtilization() > 0.8);
+    }
+}